@@ -0,0 +1,470 @@
+import java.util.Arrays;
+
+// Set of non-negative ints split into chunks of 2^16 values, each chunk kept in whichever form is smallest:
+// a sorted array of its low 16 bits, a 65536 bit bitmap, or a list of runs. Used for the post ids a user has
+// seen, which grow with every scroll; users who have seen a few posts keep a few arrays, heavy users end up
+// with bitmaps and runs that stay small however many posts they see.
+public class CompressedBitmap {
+    // Chunks with more values than this are kept as bitmaps, which take 8 KB whatever they hold
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys = new char[4];  // High 16 bits of the chunks, sorted
+    private Container[] containers = new Container[4];
+    private int count;  // Number of chunks
+    private long cardinality;
+
+    public boolean contains(int value) {
+        int index = find((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public boolean add(int value) {
+        char key = (char) (value >>> 16);
+        int index = find(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertChunk(index, key, new ArrayContainer());
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        containers[index] = container.add((char) value);
+        if (containers[index].cardinality() == before) {
+            return false;
+        }
+        cardinality++;
+        return true;
+    }
+
+    // Adds values[0..length), the chunks they touched are compacted once at the end
+    public void addAll(int[] values, int length) {
+        int[] sorted = Arrays.copyOf(values, length);
+        Arrays.sort(sorted);
+        int i = 0;
+        while (i < length) {
+            char key = (char) (sorted[i] >>> 16);
+            int index = find(key);
+            if (index < 0) {
+                index = -index - 1;
+                insertChunk(index, key, new ArrayContainer());
+            }
+            Container container = containers[index];
+            cardinality -= container.cardinality();
+            for (; i < length && (sorted[i] >>> 16) == key; i++) {
+                container = container.add((char) sorted[i]);
+            }
+            container = container.optimize();
+            cardinality += container.cardinality();
+            containers[index] = container;
+        }
+    }
+
+    // Returns the values of this bitmap that are not in the other one, chunk by chunk in one merged pass
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap();
+        int j = 0;
+        for (int i = 0; i < count; i++) {
+            while (j < other.count && other.keys[j] < keys[i]) {
+                j++;
+            }
+            Container container = (j < other.count && other.keys[j] == keys[i])
+                    ? containers[i].andNot(other.containers[j]) : containers[i].copy();
+            if (container.cardinality() > 0) {
+                result.insertChunk(result.count, keys[i], container);
+                result.cardinality += container.cardinality();
+            }
+        }
+        return result;
+    }
+
+    // The values in increasing order
+    public int[] toArray() {
+        int[] result = new int[(int) cardinality];
+        int length = 0;
+        for (int i = 0; i < count; i++) {
+            length = containers[i].toArray(result, length, keys[i] << 16);
+        }
+        return result;
+    }
+
+    public long size() {
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    // Index of the chunk with the given key, or -(insertion point) - 1
+    private int find(char key) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid] < key) {
+                lo = mid + 1;
+            } else if (keys[mid] > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -lo - 1;
+    }
+
+    private void insertChunk(int index, char key, Container container) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * count);
+            containers = Arrays.copyOf(containers, 2 * count);
+        }
+        System.arraycopy(keys, index, keys, index + 1, count - index);
+        System.arraycopy(containers, index, containers, index + 1, count - index);
+        keys[index] = key;
+        containers[index] = container;
+        count++;
+    }
+
+    // The low 16 bits of the values in one chunk. Adding returns the container that holds the chunk afterwards,
+    // which is another kind of container when the old one got too large.
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        abstract Container add(char value);
+
+        abstract Container copy();
+
+        // Clears the values of this container in a 65536 bit bitmap
+        abstract void clearIn(long[] words);
+
+        // Writes the values with the given high bits into target[offset...], returns the new offset
+        abstract int toArray(int[] target, int offset, int high);
+
+        long[] toWords() {
+            long[] words = new long[1024];
+            int[] values = new int[cardinality()];
+            toArray(values, 0, 0);
+            for (int value : values) {
+                words[value >>> 6] |= 1L << value;
+            }
+            return words;
+        }
+
+        Container andNot(Container other) {
+            long[] words = toWords();
+            other.clearIn(words);
+            return fromWords(words);
+        }
+
+        // Switches to the smallest of the three forms
+        Container optimize() {
+            return fromWords(toWords());
+        }
+    }
+
+    // Picks the smallest form for the values of a bitmap: 2 bytes per value, 8 KB, or 4 bytes per run
+    private static Container fromWords(long[] words) {
+        int cardinality = 0;
+        int runs = 0;
+        long previousTop = 0;  // Highest bit of the previous word, a run can continue across words
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+            runs += Long.bitCount(word & ~(word << 1 | previousTop));
+            previousTop = word >>> 63;
+        }
+        if (4 * runs < Math.min(2 * cardinality, 8192)) {
+            return RunContainer.fromWords(words, runs);
+        }
+        if (cardinality <= ARRAY_LIMIT) {
+            return ArrayContainer.fromWords(words, cardinality);
+        }
+        return new BitmapContainer(words, cardinality);
+    }
+
+    private static class ArrayContainer extends Container {
+        private char[] values = new char[4];
+        private int cardinality;
+
+        static ArrayContainer fromWords(long[] words, int cardinality) {
+            ArrayContainer container = new ArrayContainer();
+            container.values = new char[Math.max(cardinality, 1)];
+            for (int i = 0; i < words.length; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    container.values[container.cardinality++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return container;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            // Values usually arrive in increasing order, appending needs no search
+            int index = (cardinality > 0 && values[cardinality - 1] < value)
+                    ? -cardinality - 1 : Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == ARRAY_LIMIT) {
+                return BitmapContainer.fromArray(this).add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(2 * cardinality, ARRAY_LIMIT));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            ArrayContainer copy = new ArrayContainer();
+            copy.values = Arrays.copyOf(values, Math.max(cardinality, 1));
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        void clearIn(long[] words) {
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] &= ~(1L << values[i]);
+            }
+        }
+
+        @Override
+        int toArray(int[] target, int offset, int high) {
+            for (int i = 0; i < cardinality; i++) {
+                target[offset++] = high | values[i];
+            }
+            return offset;
+        }
+
+        // Filters the values directly, a small array is not worth a bitmap
+        @Override
+        Container andNot(Container other) {
+            ArrayContainer result = new ArrayContainer();
+            result.values = new char[Math.max(cardinality, 1)];
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result.values[result.cardinality++] = values[i];
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class BitmapContainer extends Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        static BitmapContainer fromArray(ArrayContainer array) {
+            return new BitmapContainer(array.toWords(), array.cardinality);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        void clearIn(long[] target) {
+            for (int i = 0; i < target.length; i++) {
+                target[i] &= ~words[i];
+            }
+        }
+
+        @Override
+        int toArray(int[] target, int offset, int high) {
+            for (int i = 0; i < words.length; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    target[offset++] = high | i << 6 | Long.numberOfTrailingZeros(word);
+                }
+            }
+            return offset;
+        }
+
+        @Override
+        long[] toWords() {
+            return words.clone();
+        }
+    }
+
+    // Runs of consecutive values, kept as (start, length - 1) pairs sorted by start
+    private static class RunContainer extends Container {
+        private char[] runs;
+        private int runCount;
+        private int cardinality;
+
+        static RunContainer fromWords(long[] words, int runCount) {
+            RunContainer container = new RunContainer();
+            container.runs = new char[2 * Math.max(runCount, 1)];
+            int value = 0;
+            while (value < 65536) {
+                int start = nextBit(words, value, true);
+                if (start < 0) {
+                    break;
+                }
+                int end = nextBit(words, start, false);
+                end = (end < 0) ? 65536 : end;
+                container.runs[2 * container.runCount] = (char) start;
+                container.runs[2 * container.runCount + 1] = (char) (end - start - 1);
+                container.runCount++;
+                container.cardinality += end - start;
+                value = end;
+            }
+            return container;
+        }
+
+        // First position at or after from whose bit is set (or clear), -1 if there is none
+        private static int nextBit(long[] words, int from, boolean set) {
+            int index = from >>> 6;
+            long word = (set ? words[index] : ~words[index]) & (-1L << from);
+            while (word == 0) {
+                if (++index == words.length) {
+                    return -1;
+                }
+                word = set ? words[index] : ~words[index];
+            }
+            return index << 6 | Long.numberOfTrailingZeros(word);
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        // Index of the last run starting at or before the value, -1 if there is none
+        private int runBefore(char value) {
+            int lo = 0;
+            int hi = runCount - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runs[2 * mid] <= value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return hi;
+        }
+
+        @Override
+        boolean contains(char value) {
+            int run = runBefore(value);
+            return run >= 0 && value - runs[2 * run] <= runs[2 * run + 1];
+        }
+
+        @Override
+        Container add(char value) {
+            int run = runBefore(value);
+            if (run >= 0 && value - runs[2 * run] <= runs[2 * run + 1]) {
+                return this;
+            }
+            boolean joinsPrevious = run >= 0 && value - runs[2 * run] == runs[2 * run + 1] + 1;
+            boolean joinsNext = run + 1 < runCount && runs[2 * (run + 1)] == value + 1;
+            cardinality++;
+            if (joinsPrevious && joinsNext) {
+                // The value closes the gap between two runs
+                runs[2 * run + 1] = (char) (runs[2 * (run + 1)] + runs[2 * (run + 1) + 1] - runs[2 * run]);
+                System.arraycopy(runs, 2 * (run + 2), runs, 2 * (run + 1), 2 * (runCount - run - 2));
+                runCount--;
+            } else if (joinsPrevious) {
+                runs[2 * run + 1]++;
+            } else if (joinsNext) {
+                runs[2 * (run + 1)]--;
+                runs[2 * (run + 1) + 1]++;
+            } else {
+                if (2 * runCount == runs.length) {
+                    runs = Arrays.copyOf(runs, 4 * runCount);
+                }
+                System.arraycopy(runs, 2 * (run + 1), runs, 2 * (run + 2), 2 * (runCount - run - 1));
+                runs[2 * (run + 1)] = value;
+                runs[2 * (run + 1) + 1] = 0;
+                runCount++;
+                // Too many short runs, an array or a bitmap is smaller now
+                if (4 * runCount >= Math.min(2 * cardinality, 8192)) {
+                    return optimize();
+                }
+            }
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            RunContainer copy = new RunContainer();
+            copy.runs = Arrays.copyOf(runs, 2 * Math.max(runCount, 1));
+            copy.runCount = runCount;
+            copy.cardinality = cardinality;
+            return copy;
+        }
+
+        @Override
+        void clearIn(long[] words) {
+            for (int i = 0; i < runCount; i++) {
+                int start = runs[2 * i];
+                int end = start + runs[2 * i + 1];  // Inclusive
+                int first = start >>> 6;
+                int last = end >>> 6;
+                long firstMask = -1L << start;
+                long lastMask = -1L >>> (63 - (end & 63));
+                if (first == last) {
+                    words[first] &= ~(firstMask & lastMask);
+                } else {
+                    words[first] &= ~firstMask;
+                    for (int w = first + 1; w < last; w++) {
+                        words[w] = 0;
+                    }
+                    words[last] &= ~lastMask;
+                }
+            }
+        }
+
+        @Override
+        int toArray(int[] target, int offset, int high) {
+            for (int i = 0; i < runCount; i++) {
+                int start = runs[2 * i];
+                int end = start + runs[2 * i + 1];
+                for (int value = start; value <= end; value++) {
+                    target[offset++] = high | value;
+                }
+            }
+            return offset;
+        }
+    }
+}
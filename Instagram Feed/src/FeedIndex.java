@@ -0,0 +1,285 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// Posts in feed order (more likes first, then the larger post ID, like Heap). Every user keeps its own posts
+// in one for the feed merge, and in the fan-out mode also its materialized feed: the unseen posts of the
+// users it follows.
+// The posts are kept in sorted blocks of at most BLOCK_SIZE entries in parallel arrays, and the block of a post
+// is found by a binary search over the first entries of all blocks. A feed holds thousands of posts and is
+// updated by every post, like and follow of the users it follows, the arrays keep an update down to a few
+// cache misses where a search tree would miss on every level.
+// The like count a post was inserted with is part of its key, a post whose likes change is removed with
+// the old count and inserted again.
+public class FeedIndex {
+    private static final int BLOCK_SIZE = 64;
+
+    private static class Block {
+        final int[] likes = new int[BLOCK_SIZE];
+        final long[] prefixes = new long[BLOCK_SIZE];  // prefix(post ID), most comparisons decide on it
+        final Post[] posts = new Post[BLOCK_SIZE];
+        int count;
+    }
+
+    private Block[] blocks = new Block[2];
+    // First entry of every block
+    private int[] firstLikes = new int[2];
+    private long[] firstPrefixes = new long[2];
+    private Post[] firstPosts = new Post[2];
+    private int blockCount;
+    private int size;
+
+    public void insert(Post post) {
+        int likes = post.getLikes();
+        long prefix = prefix(post.getPostId());
+        int index = 0;
+        if (blockCount == 0) {
+            addBlock(0, new Block());
+        } else {
+            index = Math.max(findBlock(likes, prefix, post), 0);
+        }
+        Block block = blocks[index];
+        int position = search(block, likes, prefix, post);
+        if (position >= 0) {
+            return;
+        }
+        position = -position - 1;
+        if (block.count == BLOCK_SIZE) {
+            Block right = split(index);
+            if (position > block.count) {
+                position -= block.count;
+                block = right;
+                index++;
+            }
+        }
+        int moved = block.count - position;
+        System.arraycopy(block.likes, position, block.likes, position + 1, moved);
+        System.arraycopy(block.prefixes, position, block.prefixes, position + 1, moved);
+        System.arraycopy(block.posts, position, block.posts, position + 1, moved);
+        block.likes[position] = likes;
+        block.prefixes[position] = prefix;
+        block.posts[position] = post;
+        block.count++;
+        size++;
+        if (position == 0) {
+            setFirst(index);
+        }
+    }
+
+    // Returns false if the post was not in the feed with that like count
+    public boolean remove(Post post, int likes) {
+        long prefix = prefix(post.getPostId());
+        int index = findBlock(likes, prefix, post);
+        if (index < 0) {
+            return false;
+        }
+        Block block = blocks[index];
+        int position = search(block, likes, prefix, post);
+        if (position < 0) {
+            return false;
+        }
+        int moved = block.count - position - 1;
+        System.arraycopy(block.likes, position + 1, block.likes, position, moved);
+        System.arraycopy(block.prefixes, position + 1, block.prefixes, position, moved);
+        System.arraycopy(block.posts, position + 1, block.posts, position, moved);
+        block.posts[--block.count] = null;
+        size--;
+
+        if (block.count == 0) {
+            removeBlock(index);
+            return true;
+        }
+        if (position == 0) {
+            setFirst(index);
+        }
+        // Small neighbours are merged, so the blocks stay at least a quarter full on average
+        if (index + 1 < blockCount && block.count + blocks[index + 1].count <= BLOCK_SIZE / 2) {
+            merge(index);
+        } else if (index > 0 && blocks[index - 1].count + block.count <= BLOCK_SIZE / 2) {
+            merge(index - 1);
+        }
+        return true;
+    }
+
+    // Adds the first limit posts in feed order to result
+    public void first(int limit, ArrayList<Post> result) {
+        for (int i = 0; i < blockCount && result.size() < limit; i++) {
+            Block block = blocks[i];
+            for (int j = 0; j < block.count && result.size() < limit; j++) {
+                result.add(block.posts[j]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Cursor cursor() {
+        return new Cursor(this);
+    }
+
+    // Reads an index in feed order, the index must not change while the cursor is in use
+    public static class Cursor {
+        private final FeedIndex index;
+        private int block;
+        private int position;
+
+        private Cursor(FeedIndex index) {
+            this.index = index;
+        }
+
+        public boolean hasPost() {
+            return block < index.blockCount;
+        }
+
+        public Post post() {
+            return index.blocks[block].posts[position];
+        }
+
+        public void next() {
+            if (++position == index.blocks[block].count) {
+                block++;
+                position = 0;
+            }
+        }
+
+        // Negative if this cursor's post comes before the other one's in the feed
+        int compareTo(Cursor other) {
+            Block mine = index.blocks[block];
+            Block theirs = other.index.blocks[other.block];
+            return compare(mine.likes[position], mine.prefixes[position], mine.posts[position],
+                    theirs.likes[other.position], theirs.prefixes[other.position], theirs.posts[other.position]);
+        }
+    }
+
+    // The first 8 characters of the ID as unsigned bytes, zero padded. A character above 0xFE is stored as 0xFF
+    // and ends the prefix. IDs with different prefixes compare like their prefixes, equal prefixes say nothing.
+    static long prefix(String id) {
+        long prefix = 0;
+        int length = Math.min(id.length(), 8);
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c >= 0xFF) {
+                return (prefix << 8 | 0xFF) << (8 * (7 - i));
+            }
+            prefix = prefix << 8 | c;
+        }
+        return prefix << (8 * (8 - length));
+    }
+
+    // Negative if the first post comes before the second one in the feed.
+    // Posts sharing an ID (a reused ID) are ordered by creation, newest first.
+    private static int compare(int likes1, long prefix1, Post post1, int likes2, long prefix2, Post post2) {
+        if (likes1 != likes2) {
+            return (likes1 > likes2) ? -1 : 1;
+        }
+        if (prefix1 != prefix2) {
+            return Long.compareUnsigned(prefix2, prefix1);
+        }
+        if (post1 == post2) {
+            return 0;
+        }
+        int byId = post2.getPostId().compareTo(post1.getPostId());
+        if (byId != 0) {
+            return byId;
+        }
+        return Integer.compare(post2.getSerial(), post1.getSerial());
+    }
+
+    // Index of the last block starting at or before the post, -1 if the post comes before all blocks
+    private int findBlock(int likes, long prefix, Post post) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(firstLikes[mid], firstPrefixes[mid], firstPosts[mid], likes, prefix, post) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    // Position of the post in the block, or -(insertion point) - 1
+    private static int search(Block block, int likes, long prefix, Post post) {
+        int low = 0;
+        int high = block.count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int order = compare(block.likes[mid], block.prefixes[mid], block.posts[mid], likes, prefix, post);
+            if (order < 0) {
+                low = mid + 1;
+            } else if (order > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -low - 1;
+    }
+
+    // Moves the upper half of a full block into a new block after it, returns the new block
+    private Block split(int index) {
+        Block block = blocks[index];
+        Block right = new Block();
+        int half = BLOCK_SIZE / 2;
+        System.arraycopy(block.likes, half, right.likes, 0, half);
+        System.arraycopy(block.prefixes, half, right.prefixes, 0, half);
+        System.arraycopy(block.posts, half, right.posts, 0, half);
+        Arrays.fill(block.posts, half, BLOCK_SIZE, null);
+        block.count = half;
+        right.count = half;
+        addBlock(index + 1, right);
+        return right;
+    }
+
+    // Appends the block after the given one to it
+    private void merge(int index) {
+        Block block = blocks[index];
+        Block next = blocks[index + 1];
+        System.arraycopy(next.likes, 0, block.likes, block.count, next.count);
+        System.arraycopy(next.prefixes, 0, block.prefixes, block.count, next.count);
+        System.arraycopy(next.posts, 0, block.posts, block.count, next.count);
+        block.count += next.count;
+        removeBlock(index + 1);
+    }
+
+    private void addBlock(int index, Block block) {
+        if (blockCount == blocks.length) {
+            int capacity = 2 * blocks.length;
+            blocks = Arrays.copyOf(blocks, capacity);
+            firstLikes = Arrays.copyOf(firstLikes, capacity);
+            firstPrefixes = Arrays.copyOf(firstPrefixes, capacity);
+            firstPosts = Arrays.copyOf(firstPosts, capacity);
+        }
+        int moved = blockCount - index;
+        System.arraycopy(blocks, index, blocks, index + 1, moved);
+        System.arraycopy(firstLikes, index, firstLikes, index + 1, moved);
+        System.arraycopy(firstPrefixes, index, firstPrefixes, index + 1, moved);
+        System.arraycopy(firstPosts, index, firstPosts, index + 1, moved);
+        blocks[index] = block;
+        blockCount++;
+        if (block.count > 0) {
+            setFirst(index);
+        }
+    }
+
+    private void removeBlock(int index) {
+        int moved = blockCount - index - 1;
+        System.arraycopy(blocks, index + 1, blocks, index, moved);
+        System.arraycopy(firstLikes, index + 1, firstLikes, index, moved);
+        System.arraycopy(firstPrefixes, index + 1, firstPrefixes, index, moved);
+        System.arraycopy(firstPosts, index + 1, firstPosts, index, moved);
+        blockCount--;
+        blocks[blockCount] = null;
+        firstPosts[blockCount] = null;
+    }
+
+    private void setFirst(int index) {
+        Block block = blocks[index];
+        firstLikes[index] = block.likes[0];
+        firstPrefixes[index] = block.prefixes[0];
+        firstPosts[index] = block.posts[0];
+    }
+}
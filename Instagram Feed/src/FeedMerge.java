@@ -0,0 +1,66 @@
+// Lazy k-way merge of post indexes, yields their posts that are not seen in feed order.
+// The heap only holds the current post of every index, so the first limit posts take about
+// limit * log(indexes) comparisons once it is built, however many posts the indexes hold.
+// A seen post is noticed when it reaches the top, then the run of seen posts after it in its index is
+// skipped by walking the index and the heap is fixed once for the whole run.
+public class FeedMerge {
+    private final FeedIndex.Cursor[] heap;
+    private final CompressedBitmap seenPosts;
+    private int size;
+
+    public FeedMerge(FeedIndex.Cursor[] cursors, CompressedBitmap seenPosts) {
+        this.heap = new FeedIndex.Cursor[cursors.length];
+        this.seenPosts = seenPosts;
+        for (FeedIndex.Cursor cursor : cursors) {
+            if (cursor.hasPost()) {
+                heap[size++] = cursor;
+            }
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            percolateDown(i);
+        }
+    }
+
+    // Returns the next unseen post in feed order, or null once all indexes are used up
+    public Post remove() {
+        while (size > 0) {
+            FeedIndex.Cursor top = heap[0];
+            Post post = top.post();
+            if (!seenPosts.contains(post.getId())) {
+                top.next();
+                advanced();
+                return post;
+            }
+            do {
+                top.next();
+            } while (top.hasPost() && seenPosts.contains(top.post().getId()));
+            advanced();
+        }
+        return null;
+    }
+
+    // Restores the heap after the cursor at the top moved
+    private void advanced() {
+        if (!heap[0].hasPost()) {
+            heap[0] = heap[--size];
+            heap[size] = null;
+        }
+        percolateDown(0);
+    }
+
+    private void percolateDown(int index) {
+        while (index < size / 2) {
+            int first = 2 * index + 1;
+            if (first + 1 < size && heap[first + 1].compareTo(heap[first]) < 0) {
+                first++;
+            }
+            if (heap[index].compareTo(heap[first]) <= 0) {
+                break;
+            }
+            FeedIndex.Cursor temp = heap[index];
+            heap[index] = heap[first];
+            heap[first] = temp;
+            index = first;
+        }
+    }
+}
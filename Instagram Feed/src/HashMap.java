@@ -1,133 +1,145 @@
 import java.util.ArrayList;
-import static java.util.Objects.hash;
 
+// Open addressing hash map with linear probing over parallel key, hash and value arrays.
+// Lookups allocate nothing and deletes shift the rest of the probe run back, so there are no tombstones.
+// The mixed hash of every key is kept next to it, probing and shifting compare ints instead of visiting keys.
 public class HashMap<K, V> {
 
-    private static class Entry<K, V> {
-        K key;
-        V value;
-        Entry<K, V> next;
-
-        public Entry(K key, V value) {
-            this.key = key;
-            this.value = value;
-            this.next = null;
-        }
-    }
-
     private static final int DEFAULT_CAPACITY = 16;
     private static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
-    private int capacity;
+    private K[] keys;  // null marks a free slot, so null keys are not supported
+    private int[] hashes;
+    private V[] values;
+    private int mask;  // Capacity - 1, the capacity is always a power of two
     private float loadFactor;
+    private int threshold;
     private int size;
-    private Entry<K, V>[] table;
 
     public HashMap() {
         this(DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
     }
 
     public HashMap(int capacity, float loadFactor) {
-        this.capacity = capacity;
         this.loadFactor = loadFactor;
         this.size = 0;
-        this.table = new Entry[capacity];
+        allocate(Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1));
     }
 
-    public boolean containsKey(K key) {
-        int index = getIndex(key);
-        Entry<K, V> head = table[index];
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        keys = (K[]) new Object[capacity];
+        hashes = new int[capacity];
+        values = (V[]) new Object[capacity];
+        mask = capacity - 1;
+        // At least one slot always stays free, every probe run ends
+        threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
 
-        while (head != null) {
-            if (head.key == null || head.key.equals(key)) {
-                return true;
+    // The hash code is mixed first, String hashes of similar IDs differ mostly in the low bits.
+    // The low bits of the mixed hash give the key's home slot.
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Returns the slot holding the key, or -1
+    private int indexOf(Object key) {
+        if (key == null) {
+            return -1;
+        }
+        int hash = hash(key);
+        int index = hash & mask;
+        K current;
+        while ((current = keys[index]) != null) {
+            if (hashes[index] == hash && (current == key || current.equals(key))) {
+                return index;
             }
-            head = head.next;
+            index = (index + 1) & mask;
         }
-
-        return false;
+        return -1;
     }
 
-    private int getIndex(K key) {
-        return Math.abs(hash(key)) % capacity;
+    public boolean containsKey(K key) {
+        return indexOf(key) >= 0;
     }
 
     public void put(K key, V value) {
-        int index = getIndex(key);
-        Entry<K, V> entry = new Entry<>(key, value);
-        Entry<K, V> head = table[index];
-
-        if (head == null) {
-            table[index] = entry;
-            size++;
-        } else {
-            Entry<K, V> prev = null;
-            while (head != null) {
-                if (head.key == null || head.key.equals(key)) {
-                    head.value = value; // Update existing key
-                    return;
-                }
-                prev = head;
-                head = head.next;
+        if (key == null) {
+            throw new NullPointerException("HashMap does not support null keys");
+        }
+        int hash = hash(key);
+        int index = hash & mask;
+        K current;
+        while ((current = keys[index]) != null) {
+            if (hashes[index] == hash && (current == key || current.equals(key))) {
+                values[index] = value; // Update existing key
+                return;
             }
-            prev.next = entry; // Add new key-value pair
-            size++;
+            index = (index + 1) & mask;
         }
+        keys[index] = key;
+        hashes[index] = hash;
+        values[index] = value;
+        size++;
 
-        if (size > capacity * loadFactor) {
+        if (size > threshold) {
             resize();
         }
     }
 
     public V get(K key) {
-        int index = getIndex(key);
-        Entry<K, V> head = table[index];
-
-        while (head != null) {
-            if (head.key == null || head.key.equals(key)) {
-                return head.value;
-            }
-            head = head.next;
-        }
+        int index = indexOf(key);
+        return (index < 0) ? null : values[index];
+    }
 
-        return null;
+    public V getOrDefault(K key, V defaultValue) {
+        int index = indexOf(key);
+        return (index < 0) ? defaultValue : values[index];
     }
 
     public V remove(K key) {
-        int index = getIndex(key);
-        Entry<K, V> head = table[index];
-        Entry<K, V> prev = null;
-
-        while (head != null) {
-            if (head.key == null || head.key.equals(key)) {
-                if (prev == null) {
-                    table[index] = head.next; // Remove head of bucket
-                } else {
-                    prev.next = head.next; // Remove middle or last node
-                }
-                size--;
-                return head.value;
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V value = values[index];
+
+        // Move later entries of the run into the gap unless that would put them before their home slot
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (keys[next] != null) {
+            int home = hashes[next] & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                hashes[gap] = hashes[next];
+                values[gap] = values[next];
+                gap = next;
             }
-            prev = head;
-            head = head.next;
+            next = (next + 1) & mask;
         }
-
-        return null;
+        keys[gap] = null;
+        values[gap] = null;
+        size--;
+        return value;
     }
 
     private void resize() {
-        capacity *= 2;
-        Entry<K, V>[] newTable = new Entry[capacity];
-        for (Entry<K, V> entry : table) {
-            while (entry != null) {
-                Entry<K, V> next = entry.next;
-                int index = getIndex(entry.key);
-                entry.next = newTable[index];
-                newTable[index] = entry;
-                entry = next;
+        K[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        V[] oldValues = values;
+        allocate(2 * oldKeys.length);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int index = oldHashes[i] & mask;
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                hashes[index] = oldHashes[i];
+                values[index] = oldValues[i];
             }
         }
-        table = newTable;
     }
 
     public int size() {
@@ -139,15 +151,12 @@ public class HashMap<K, V> {
     }
 
     public ArrayList<K> getKeys() {
-        ArrayList<K> keys = new ArrayList<>();
-        for (Entry<K, V> bucket : table) {
-            Entry<K, V> current = bucket;
-            while (current != null) {
-                keys.add(current.key);
-                current = current.next;
+        ArrayList<K> result = new ArrayList<>(size);
+        for (K key : keys) {
+            if (key != null) {
+                result.add(key);
             }
         }
-        return keys;
+        return result;
     }
 }
-
@@ -73,11 +73,16 @@ public class Heap {
      * Comparison logic:
      * - Higher likes come first.
      * - If likes are equal, lexicographically larger ID comes first.
+     * - If the ID is equal too (a reused ID), the newer post comes first, like in FeedIndex.
      */
     private int compare(Post p1, Post p2) {
         if (p1.getLikes() != p2.getLikes()) {
             return Integer.compare(p1.getLikes(), p2.getLikes());
         }
-        return p1.getPostId().compareTo(p2.getPostId());
+        int byId = p1.getPostId().compareTo(p2.getPostId());
+        if (byId != 0) {
+            return byId;
+        }
+        return Integer.compare(p1.getSerial(), p2.getSerial());
     }
 }
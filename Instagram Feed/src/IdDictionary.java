@@ -0,0 +1,34 @@
+import java.util.ArrayList;
+
+// Interns string IDs into dense ints 0, 1, 2, ... in the order they are first seen.
+// Everything behind the parser works with the ints, the strings are only needed again for the output.
+public class IdDictionary {
+    private final HashMap<String, Integer> ids = new HashMap<>();
+    private final ArrayList<String> names = new ArrayList<>();
+
+    // Returns the id of the name, assigning the next free one if the name is new
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        id = names.size();
+        ids.put(name, id);
+        names.add(name);
+        return id;
+    }
+
+    // Returns the id of the name, or -1 if it was never interned
+    public int get(String name) {
+        Integer id = ids.get(name);
+        return (id == null) ? -1 : id;
+    }
+
+    public String name(int id) {
+        return names.get(id);
+    }
+
+    public int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,122 @@
+import java.util.Arrays;
+
+// Set of non-negative ints, open addressing with linear probing over a single int array.
+// Small sets start with a few slots, so the many users with a handful of followers stay cheap.
+public class IntHashSet {
+    private static final int EMPTY = -1;
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private int[] slots;
+    private int mask;
+    private int size;
+
+    public IntHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntHashSet(int capacity) {
+        allocate(Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1));
+        this.size = 0;
+    }
+
+    private void allocate(int capacity) {
+        slots = new int[capacity];
+        Arrays.fill(slots, EMPTY);
+        mask = capacity - 1;
+    }
+
+    // Dense ids are consecutive, the multiply spreads them so neighbours do not form one long run
+    private int slot(int value) {
+        int h = value * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public boolean add(int value) {
+        int index = slot(value);
+        int current;
+        while ((current = slots[index]) != EMPTY) {
+            if (current == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        slots[index] = value;
+        size++;
+        // Resize at three quarters full
+        if (4 * size > 3 * slots.length) {
+            resize();
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int index = slot(value);
+        int current;
+        while ((current = slots[index]) != EMPTY) {
+            if (current == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    public boolean remove(int value) {
+        int index = slot(value);
+        int current;
+        while ((current = slots[index]) != value) {
+            if (current == EMPTY) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+
+        // Backward shift, the same as HashMap.remove
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while ((current = slots[next]) != EMPTY) {
+            if (((next - slot(current)) & mask) >= ((next - gap) & mask)) {
+                slots[gap] = current;
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        slots[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    private void resize() {
+        int[] oldSlots = slots;
+        allocate(2 * oldSlots.length);
+        for (int value : oldSlots) {
+            if (value != EMPTY) {
+                int index = slot(value);
+                while (slots[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                slots[index] = value;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // The elements in no particular order
+    public int[] toArray() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int value : slots) {
+            if (value != EMPTY) {
+                result[count++] = value;
+            }
+        }
+        return result;
+    }
+}
@@ -2,11 +2,24 @@ import java.io.*;
 import java.util.ArrayList;
 
 public class Main {
-    public static HashMap<String, User> users = new HashMap<>();
-    public static HashMap<String, Post> posts = new HashMap<>();
+    // User and post IDs are interned into dense ints when they are created, the lists are indexed by them
+    public static IdDictionary userIds = new IdDictionary();
+    public static IdDictionary postIds = new IdDictionary();
+    public static ArrayList<User> users = new ArrayList<>();
+    public static ArrayList<Post> posts = new ArrayList<>();
+    // In the fan-out mode every user's feed is materialized as posts are created, followed, liked and seen,
+    // feed commands then only read its first entries instead of collecting and heapifying all unseen posts
+    public static boolean fanOut = false;
+
+    // Usage: java Main [--fan-out] <input_file> <output_file>
     public static void main(String[] args) {
-        String inputFilePath = args[0];
-        String outputFilePath = args[1];
+        int argIndex = 0;
+        if (args[argIndex].equals("--fan-out")) {
+            fanOut = true;
+            argIndex++;
+        }
+        String inputFilePath = args[argIndex];
+        String outputFilePath = args[argIndex + 1];
 
         try (
                 BufferedReader reader = new BufferedReader(new FileReader(inputFilePath));
@@ -72,137 +85,231 @@ public class Main {
         }
     }
 
+    // Returns the user with the given ID, or null
+    private static User findUser(String id) {
+        int user = userIds.get(id);
+        return (user < 0) ? null : users.get(user);
+    }
+
     public static String createUser(String id) {
-        if (!users.containsKey(id)) {
-            users.put(id, new User());
+        if (userIds.get(id) < 0) {
+            users.add(new User(userIds.intern(id), id));
             return "Created user with Id " + id + ".";
         }
         return "Some error occurred in create_user.";
     }
 
     public static String followUser(String id1, String id2) {
-        if (users.containsKey(id1) && users.containsKey(id2) && !users.get(id1).getFollowing().contains(id2) && !id1.equals(id2)) {
-            users.get(id1).getFollowing().add(id2);
-            users.get(id2).getFollowers().add(id1);
+        User user1 = findUser(id1);
+        User user2 = findUser(id2);
+        if (user1 != null && user2 != null && user1 != user2 && !user1.getFollowing().contains(user2.getId())) {
+            user1.getFollowing().add(user2.getId());
+            user2.getFollowers().add(user1.getId());
+            if (fanOut) {
+                for (Post post : user2.getPosts()) {
+                    if (!user1.getSeenPosts().contains(post.getId())) {
+                        user1.getFeed().insert(post);
+                    }
+                }
+            }
             return id1 + " followed " + id2 + ".";
         }
         return "Some error occurred in follow_user.";
     }
 
     public static String unfollowUser(String id1, String id2) {
-        if (users.containsKey(id1) && users.containsKey(id2) && users.get(id1).getFollowing().contains(id2)) {
-            users.get(id1).getFollowing().remove(id2);
-            users.get(id2).getFollowers().remove(id1);
+        User user1 = findUser(id1);
+        User user2 = findUser(id2);
+        if (user1 != null && user2 != null && user1.getFollowing().contains(user2.getId())) {
+            user1.getFollowing().remove(user2.getId());
+            user2.getFollowers().remove(user1.getId());
+            if (fanOut) {
+                for (Post post : user2.getPosts()) {
+                    user1.getFeed().remove(post, post.getLikes());
+                }
+            }
             return id1 + " unfollowed " + id2 + ".";
         }
         return "Some error occurred in unfollow_user.";
     }
 
     public static String createPost(String id, String postId, String content) {
-        if (users.containsKey(id)) {
-            Post post = new Post(id, postId, content);
-            posts.put(postId, post);
-            users.get(id).getPosts().add(post);
+        User user = findUser(id);
+        if (user != null) {
+            // A reused post ID keeps its dense id, the ID then refers to the newest post
+            int ordinal = postIds.intern(postId);
+            Post post = new Post(ordinal, user.getId(), id, postId, content);
+            if (ordinal == posts.size()) {
+                posts.add(post);
+            } else {
+                post.setOlder(posts.set(ordinal, post));
+            }
+            user.getPosts().add(post);
+            user.getPostIndex().insert(post);
+            if (fanOut) {
+                for (int follower : user.getFollowers().toArray()) {
+                    User reader = users.get(follower);
+                    if (!reader.getSeenPosts().contains(ordinal)) {
+                        reader.getFeed().insert(post);
+                    }
+                }
+            }
             return id + " created a post with Id " + postId + ".";
         }
         return "Some error occurred in create_post.";
     }
 
     public static String seePost(String id, String postId) {
-        if (users.containsKey(id) && posts.containsKey(postId)) {
-            users.get(id).getSeenPosts().add(postId);
+        User user = findUser(id);
+        int post = postIds.get(postId);
+        if (user != null && post >= 0) {
+            markSeen(user, post);
             return id + " saw " + postId + ".";
         }
         return "Some error occurred in see_post.";
     }
 
     public static String seeAllPostsFromUser(String userId1, String userId2) {
-        if (users.containsKey(userId1) && users.containsKey(userId2)) {
-            for (Post post : users.get(userId2).getPosts()) {
-                users.get(userId1).getSeenPosts().add(post.getPostId());;
+        User user1 = findUser(userId1);
+        User user2 = findUser(userId2);
+        if (user1 != null && user2 != null) {
+            ArrayList<Post> seen = user2.getPosts();
+            int[] ordinals = new int[seen.size()];
+            for (int i = 0; i < ordinals.length; i++) {
+                ordinals[i] = seen.get(i).getId();
+            }
+            if (fanOut) {
+                for (int ordinal : ordinals) {
+                    dropFromFeed(user1, ordinal);
+                }
             }
+            user1.getSeenPosts().addAll(ordinals, ordinals.length);
             return userId1 + " saw all posts of " + userId2 + ".";
         }
         return "Some error occurred in see_all_posts_from_user.";
     }
 
     public static String toggleLike(String id, String postId) {
-        if (users.containsKey(id) && posts.containsKey(postId)) {
-            users.get(id).getSeenPosts().add(postId);
-            if (posts.get(postId).getLikers().contains(id)) {
-                posts.get(postId).removeLike(id);
-                return id + " unliked " + postId + ".";
-            } else {
-                posts.get(postId).addLike(id);
+        User user = findUser(id);
+        int ordinal = postIds.get(postId);
+        if (user != null && ordinal >= 0) {
+            Post post = posts.get(ordinal);
+            markSeen(user, ordinal);
+            if (toggle(user, post)) {
                 return id + " liked " + postId + ".";
             }
+            return id + " unliked " + postId + ".";
         }
         return "Some error occurred in toggle_like.";
     }
 
-    public static String generateFeed(String userID, int limit) {
-        ArrayList<Post> allPosts = new ArrayList<>();
-        if (users.containsKey(userID)) {
-            String result = "Feed for " + userID + ":";
-            for (String userId : users.get(userID).getFollowing().getKeys()) {
-                for (Post post : users.get(userId).getPosts()) {
-                    if (!users.get(userID).getSeenPosts().contains(post.getPostId())) {
-                        allPosts.add(post);
-                    }
+    private static void markSeen(User user, int ordinal) {
+        if (fanOut) {
+            dropFromFeed(user, ordinal);
+        }
+        user.getSeenPosts().add(ordinal);
+    }
+
+    // Removes the posts with the given ID from the user's feed, called before the ID is marked seen
+    private static void dropFromFeed(User user, int ordinal) {
+        if (!user.getSeenPosts().contains(ordinal)) {
+            for (Post post = posts.get(ordinal); post != null; post = post.getOlder()) {
+                if (user.getFollowing().contains(post.getAuthorId())) {
+                    user.getFeed().remove(post, post.getLikes());
                 }
             }
-            Heap feed = new Heap(allPosts);
-            while (limit-- > 0) {
-                Post post = feed.remove();
-                if (post == null) {
-                    result += "\n" + "No more posts available for " + userID +".";
-                    break;
+        }
+    }
+
+    // Likes or unlikes the post for the user, returns true if it is liked now.
+    // The post moves to its new place in its author's post index, and in the fan-out mode in the feeds
+    // of the author's followers.
+    private static boolean toggle(User user, Post post) {
+        int likes = post.getLikes();
+        boolean liked = !post.getLikers().contains(user.getId());
+        if (liked) {
+            post.addLike(user.getId());
+        } else {
+            post.removeLike(user.getId());
+        }
+        User author = users.get(post.getAuthorId());
+        author.getPostIndex().remove(post, likes);
+        author.getPostIndex().insert(post);
+        if (fanOut) {
+            for (int follower : author.getFollowers().toArray()) {
+                FeedIndex feed = users.get(follower).getFeed();
+                if (feed.remove(post, likes)) {
+                    feed.insert(post);
                 }
+            }
+        }
+        return liked;
+    }
+
+    // The first limit posts of the user's feed in feed order, fewer if the feed runs out.
+    // Without the fan-out mode the post indexes of the followed users are merged.
+    private static ArrayList<Post> feedPosts(User user, int limit) {
+        ArrayList<Post> result = new ArrayList<>();
+        if (fanOut) {
+            user.getFeed().first(limit, result);
+            return result;
+        }
+        int[] following = user.getFollowing().toArray();
+        FeedIndex.Cursor[] cursors = new FeedIndex.Cursor[following.length];
+        for (int i = 0; i < following.length; i++) {
+            cursors[i] = users.get(following[i]).getPostIndex().cursor();
+        }
+        FeedMerge feed = new FeedMerge(cursors, user.getSeenPosts());
+        Post post;
+        while (result.size() < limit && (post = feed.remove()) != null) {
+            result.add(post);
+        }
+        return result;
+    }
+
+    public static String generateFeed(String userID, int limit) {
+        User user = findUser(userID);
+        if (user != null) {
+            String result = "Feed for " + userID + ":";
+            ArrayList<Post> feed = feedPosts(user, limit);
+            for (Post post : feed) {
                 result += "\n" + post.seePost();
             }
+            if (feed.size() < limit) {
+                result += "\n" + "No more posts available for " + userID +".";
+            }
             return result;
         }
         return "Some error occurred in generate_feed.";
     }
 
     public static String scrollFeed(String userID, ArrayList<Integer> likeStates) {
-        ArrayList<Post> allPosts = new ArrayList<>();
-        if (users.containsKey(userID)) {
-            for (String userId : users.get(userID).getFollowing().getKeys()) {
-                for (Post post : users.get(userId).getPosts()) {
-                    if (!users.get(userID).getSeenPosts().contains(post.getPostId())) {
-                        allPosts.add(post);
-                    }
-                }
-            }
-            Heap feed = new Heap(allPosts);
+        User user = findUser(userID);
+        if (user != null) {
+            // The posts are picked before any of them is seen or liked, a like does not reorder the rest
+            ArrayList<Post> feed = feedPosts(user, likeStates.size());
             String result = userID + " is scrolling through feed:";
             for (int i = 0; i < likeStates.size(); i++) {
                 if (likeStates.get(i) == 1) {
-                    Post post = feed.remove();
+                    Post post = (i < feed.size()) ? feed.get(i) : null;
 
                     if (post == null) {
                         result += "\n" + "No more posts in feed.";
                         break;
                     }
 
-                    if (!post.getLikers().contains(userID)) {
-                        post.addLike(userID);
-                    } else {
-                        post.removeLike(userID);
-                    }
-
-                    users.get(userID).getSeenPosts().add(post.getPostId());
+                    toggle(user, post);
+                    markSeen(user, post.getId());
 
                     result += "\n" + userID + " saw " + post.getPostId() + " while scrolling and clicked the like button.";
                 } else {
-                    Post post = feed.remove();
+                    Post post = (i < feed.size()) ? feed.get(i) : null;
                     if (post == null) {
                         result += "\n" + "No more posts in feed.";
                         break;
                     }
 
-                    users.get(userID).getSeenPosts().add(post.getPostId());
+                    markSeen(user, post.getId());
                     result += "\n" + userID + " saw " + post.getPostId() + " while scrolling.";
                 }
             }
@@ -212,9 +319,10 @@ public class Main {
     }
 
     public static String sortPosts(String userID) {
-        if (users.containsKey(userID)) {
+        User user = findUser(userID);
+        if (user != null) {
             ArrayList<Post> allPosts = new ArrayList<>();
-            for (Post post : users.get(userID).getPosts()) {
+            for (Post post : user.getPosts()) {
                 allPosts.add(post);
             }
             String result = "Sorting " + userID + "'s posts:";
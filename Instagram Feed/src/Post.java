@@ -1,23 +1,53 @@
 public class Post {
+    private static int created;
+
+    private final int id;  // Dense id from Main.postIds
+    private final int serial;  // Creation order, tells apart posts sharing a reused ID
     private final String postId;
     public final String userId;
+    private final int authorId;  // Dense id of userId
+    private Post older;  // Previous post with the same ID, if the ID was reused
     private final String content;
-    private HashSet<String> likers;
+    private IntHashSet likers;
     private int likes;
 
-    public Post(String id, String postId, String content) {
+    public Post(int id, int authorId, String userId, String postId, String content) {
+        this.id = id;
+        this.serial = created++;
         this.postId = postId;
-        this.userId = id;
+        this.userId = userId;
+        this.authorId = authorId;
         this.content = content;
         this.likes = 0;
-        this.likers = new HashSet<>();
+        this.likers = new IntHashSet();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getSerial() {
+        return serial;
+    }
+
+    public int getAuthorId() {
+        return authorId;
+    }
+
+    public Post getOlder() {
+        return older;
+    }
+
+    public void setOlder(Post older) {
+        this.older = older;
     }
 
     public String getPostId() {
         return postId;
     }
 
-    public HashSet<String> getLikers() {
+    // Dense ids of the users who like this post
+    public IntHashSet getLikers() {
         return likers;
     }
 
@@ -25,12 +55,12 @@ public class Post {
         return likes;
     }
 
-    public void addLike(String userId) {
+    public void addLike(int userId) {
         likers.add(userId);
         likes++;
     }
 
-    public void removeLike(String userId) {
+    public void removeLike(int userId) {
         likers.remove(userId);
         likes--;
     }
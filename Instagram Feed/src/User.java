@@ -1,30 +1,59 @@
 import java.util.ArrayList;
 
 public class User {
-    private HashSet<String> followers;
-    private HashSet<String> following;
+    private final int id;  // Dense id from Main.userIds
+    private final String name;
+    private IntHashSet followers;
+    private IntHashSet following;
     private ArrayList<Post> posts;
-    private HashSet<String> seenPosts;
+    private CompressedBitmap seenPosts;
+    private FeedIndex postIndex;
+    private FeedIndex feed;
 
-    public User() {
-        this.followers = new HashSet<>();
-        this.following = new HashSet<>();
+    public User(int id, String name) {
+        this.id = id;
+        this.name = name;
+        this.followers = new IntHashSet();
+        this.following = new IntHashSet();
         this.posts = new ArrayList<>();
-        this.seenPosts = new HashSet<>();
+        this.seenPosts = new CompressedBitmap();
+        this.postIndex = new FeedIndex();
+        this.feed = new FeedIndex();
     }
 
-    public HashSet<String> getSeenPosts() {
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Dense ids of the posts this user has seen
+    public CompressedBitmap getSeenPosts() {
         return seenPosts;
     }
 
-    public HashSet<String> getFollowers() {
+    // Dense ids of the users following this one
+    public IntHashSet getFollowers() {
         return followers;
     }
 
-    public HashSet<String> getFollowing() {
+    // Dense ids of the users this one follows
+    public IntHashSet getFollowing() {
         return following;
     }
 
+    // This user's posts in feed order, for the feed merge
+    public FeedIndex getPostIndex() {
+        return postIndex;
+    }
+
+    // Unseen posts of the followed users, only kept up to date in the fan-out mode
+    public FeedIndex getFeed() {
+        return feed;
+    }
+
     public ArrayList<Post> getPosts() {
         return posts;
     }
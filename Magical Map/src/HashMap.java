@@ -1,48 +1,37 @@
 import java.util.ArrayList;
 
-import static java.util.Objects.hash;
-
+// A hash map using open addressing with linear probing
+// Keys, their hashes and values live in parallel arrays, so lookups allocate nothing and no entry objects are created
 public class HashMap<K, V> {
 
-    // A private static inner class to represent an entry in a hash map or linked list
-    private static class Entry<K, V> {
-        // Key of the entry
-        K key;
-
-        // Value associated with the key
-        V value;
-
-        // Reference to the next entry in case of collisions (used in chaining)
-        Entry<K, V> next;
-
-        // Constructor to initialize the key-value pair and set next to null
-        public Entry(K key, V value) {
-            this.key = key;      // Initialize the key
-            this.value = value;  // Initialize the value
-            this.next = null;    // Initialize next as null (no chaining yet)
-        }
-    }
-
-    // Default initial capacity for the hash table (number of buckets)
+    // Default initial capacity for the hash table (number of slots)
     private static final int DEFAULT_CAPACITY = 16;
 
     // Default load factor for resizing the hash table
     // Load factor determines when to resize the table (e.g., 0.75 means resize when 75% full)
     private static final float DEFAULT_LOAD_FACTOR = 0.75f;
 
-    // Current capacity of the hash table (number of buckets)
-    private int capacity;
+    // Keys of the table, a null key marks a free slot (so null keys cannot be stored)
+    private K[] keys;
+
+    // Mixed hash of every stored key, compared before the keys themselves and used to find home slots
+    private int[] hashes;
+
+    // Values of the table, values[i] belongs to keys[i]
+    private V[] values;
+
+    // Capacity - 1, the capacity is always a power of two so an index is found with a bitwise AND
+    private int mask;
 
     // Load factor threshold for resizing the table
     private float loadFactor;
 
+    // Number of entries after which the table is doubled
+    private int threshold;
+
     // Current number of key-value pairs (entries) stored in the table
     private int size;
 
-    // Array of Entry<K, V> representing the hash table buckets
-    // Each index holds a linked list of entries to handle hash collisions
-    private Entry<K, V>[] table;
-
 
     // Default constructor for the HashMap
     // Initializes the hash table with default capacity and load factor
@@ -55,86 +44,102 @@ public class HashMap<K, V> {
     // Parameterized constructor for the HashMap
     // Allows specifying initial capacity and load factor for the hash table
     public HashMap(int capacity, float loadFactor) {
-        // Set the initial capacity of the hash table
-        this.capacity = capacity;
-
         // Set the load factor threshold for resizing the table
         this.loadFactor = loadFactor;
 
         // Initialize the size of the HashMap to 0 (no entries added yet)
         this.size = 0;
 
-        // Initialize the table (array of Entry<K, V>) with the specified capacity
-        this.table = new Entry[capacity];
+        // Round the capacity up to a power of two and create the arrays
+        allocate(Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1));
     }
 
 
-    // Method to check if a specific key exists in the HashMap
-    public boolean containsKey(K key) {
-        // Calculate the index of the bucket for the given key using a hashing function
-        int index = getIndex(key);
+    // Method to create empty key, hash and value arrays of the given capacity
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        keys = (K[]) new Object[capacity];
+        hashes = new int[capacity];
+        values = (V[]) new Object[capacity];
+        mask = capacity - 1;
+
+        // Keep at least one slot free so that every probe sequence ends at an empty slot
+        threshold = Math.min((int) (capacity * loadFactor), capacity - 1);
+    }
 
-        // Retrieve the head of the linked list at the calculated index
-        Entry<K, V> head = table[index];
 
-        // Traverse the linked list at this index to search for the key
-        while (head != null) {
-            // If the key in the current entry is null or matches the provided key, return true
-            if (head.key == null || head.key.equals(key)) {
-                return true; // Key exists in the map
+    // Method to calculate the mixed hash of a key, its low bits give the key's home slot
+    private static int hash(Object key) {
+        // Mix the hash code so that keys like "12-7" and "12-8" do not land in neighbouring slots
+        int h = key.hashCode() * 0x9E3779B9;
+
+        // Fold the high bits into the low bits, which index the table
+        return h ^ (h >>> 16);
+    }
+
+
+    // Method to find the slot holding a key, returns -1 if the key is not in the map
+    private int indexOf(Object key) {
+        // Null keys are never stored
+        if (key == null) {
+            return -1;
+        }
+
+        // Start at the home slot of the key
+        int hash = hash(key);
+        int index = hash & mask;
+
+        // Walk the probe sequence until the key or an empty slot is found
+        K current;
+        while ((current = keys[index]) != null) {
+            // Keys are only compared when their hashes match
+            if (hashes[index] == hash && (current == key || current.equals(key))) {
+                return index; // Key found
             }
-            // Move to the next entry in the linked list
-            head = head.next;
+            index = (index + 1) & mask; // Move to the next slot, wrapping around at the end
         }
 
-        // Return false if the key was not found after traversing the list
-        return false;
+        // An empty slot ends the search, the key is not in the map
+        return -1;
     }
 
 
-    // Method to calculate the index (bucket) for a given key
-    private int getIndex(K key) {
-        // Compute the hash code for the given key and ensure it's positive using Math.abs
-        // Take the modulus with 'capacity' to map the hash code to a valid index within the table size
-        return Math.abs(hash(key)) % capacity;
+    // Method to check if a specific key exists in the HashMap
+    public boolean containsKey(K key) {
+        return indexOf(key) >= 0;
     }
 
 
     // Method to add or update a key-value pair in the HashMap
     public void put(K key, V value) {
-        // Calculate the index of the bucket where the key-value pair will be stored
-        int index = getIndex(key);
-
-        // Create a new entry for the key-value pair
-        Entry<K, V> entry = new Entry<>(key, value);
-
-        // Retrieve the head of the linked list at the calculated index
-        Entry<K, V> head = table[index];
-
-        // If the bucket is empty, insert the new entry and increment the size
-        if (head == null) {
-            table[index] = entry;
-            size++;
-        } else {
-            // Traverse the linked list to check for existing keys or add a new entry
-            Entry<K, V> prev = null;
-            while (head != null) {
-                // If the key already exists, update its value
-                if (head.key == null || head.key.equals(key)) {
-                    head.value = value; // Update the value for the existing key
-                    return; // Exit the method
-                }
-                prev = head;   // Move the 'prev' pointer to the current node
-                head = head.next; // Move to the next node in the list
-            }
+        // A null key would look like a free slot
+        if (key == null) {
+            throw new NullPointerException("HashMap does not support null keys");
+        }
 
-            // Add the new entry to the end of the linked list
-            prev.next = entry;
-            size++; // Increment the size of the HashMap
+        // Start at the home slot of the key
+        int hash = hash(key);
+        int index = hash & mask;
+
+        // Walk the probe sequence looking for the key
+        K current;
+        while ((current = keys[index]) != null) {
+            // If the key already exists, update its value
+            if (hashes[index] == hash && (current == key || current.equals(key))) {
+                values[index] = value; // Update the value for the existing key
+                return; // Exit the method
+            }
+            index = (index + 1) & mask; // Move to the next slot
         }
 
+        // The key is new, store it in the first empty slot of its probe sequence
+        keys[index] = key;
+        hashes[index] = hash;
+        values[index] = value;
+        size++; // Increment the size of the HashMap
+
         // Check if the size exceeds the load factor threshold, and resize if necessary
-        if (size > capacity * loadFactor) {
+        if (size > threshold) {
             resize();
         }
     }
@@ -142,92 +147,80 @@ public class HashMap<K, V> {
 
     // Method to retrieve the value associated with a given key in the HashMap
     public V get(K key) {
-        // Calculate the index of the bucket where the key might be stored
-        int index = getIndex(key);
-
-        // Retrieve the head of the linked list at the calculated index
-        Entry<K, V> head = table[index];
-
-        // Traverse the linked list to search for the key
-        while (head != null) {
-            // Check if the current entry's key matches the given key
-            if (head.key == null || head.key.equals(key)) {
-                return head.value; // Return the value if the key matches
-            }
-            head = head.next; // Move to the next entry in the linked list
-        }
+        // Find the slot of the key
+        int index = indexOf(key);
 
         // Return null if the key is not found in the table
-        return null;
+        return (index < 0) ? null : values[index];
     }
 
 
     // Method to remove a key-value pair from the HashMap and return the associated value
     public V remove(K key) {
-        // Calculate the index of the bucket where the key might be stored
-        int index = getIndex(key);
-
-        // Retrieve the head of the linked list at the calculated index
-        Entry<K, V> head = table[index];
-        Entry<K, V> prev = null; // To keep track of the previous node during traversal
-
-        // Traverse the linked list to find the key
-        while (head != null) {
-            // Check if the current entry's key matches the given key
-            if (head.key == null || head.key.equals(key)) {
-                // If the key is found, remove the current node from the linked list
-                if (prev == null) {
-                    // Case 1: The node to be removed is the head of the bucket
-                    table[index] = head.next;
-                } else {
-                    // Case 2: The node to be removed is in the middle or at the end
-                    prev.next = head.next;
-                }
+        // Find the slot of the key
+        int index = indexOf(key);
 
-                // Decrement the size of the HashMap
-                size--;
+        // Return null if the key was not found in the HashMap
+        if (index < 0) {
+            return null;
+        }
 
-                // Return the value associated with the removed key
-                return head.value;
+        // Remember the value associated with the removed key
+        V value = values[index];
+
+        // Backward shift deletion: later entries of the same probe run are moved into the gap,
+        // otherwise a lookup would stop at the gap and miss them
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (keys[next] != null) {
+            // Home slot of the entry after the gap
+            int home = hashes[next] & mask;
+
+            // The entry may only move back if the gap is not before its home slot
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                hashes[gap] = hashes[next];
+                values[gap] = values[next];
+                gap = next; // The entry's old slot is the new gap
             }
-
-            // Move to the next node in the linked list
-            prev = head;
-            head = head.next;
+            next = (next + 1) & mask;
         }
 
-        // Return null if the key was not found in the HashMap
-        return null;
+        // Free the last gap
+        keys[gap] = null;
+        values[gap] = null;
+
+        // Decrement the size of the HashMap
+        size--;
+
+        // Return the value associated with the removed key
+        return value;
     }
 
 
     // Method to resize (expand) the hash table when the load factor threshold is exceeded
     private void resize() {
-        // Double the capacity of the hash table
-        capacity *= 2;
-
-        // Create a new table (array) with the updated capacity
-        Entry<K, V>[] newTable = new Entry[capacity];
-
-        // Rehash all existing entries and move them to the new table
-        for (Entry<K, V> entry : table) { // Iterate over all buckets in the current table
-            while (entry != null) { // Traverse the linked list in each bucket
-                Entry<K, V> next = entry.next; // Store the next entry before rehashing
-
-                // Recalculate the new bucket index for the current entry's key
-                int index = getIndex(entry.key);
-
-                // Insert the current entry into the new table
-                entry.next = newTable[index]; // Point to the existing head of the new bucket
-                newTable[index] = entry; // Set the current entry as the new head of the bucket
-
-                // Move to the next entry in the current bucket
-                entry = next;
+        // Keep the old arrays to copy the entries from
+        K[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        V[] oldValues = values;
+
+        // Create new arrays with double the capacity
+        allocate(2 * oldKeys.length);
+
+        // Rehash all existing entries and move them to the new arrays
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                // Find the first empty slot starting at the entry's new home slot
+                int index = oldHashes[i] & mask;
+                while (keys[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                hashes[index] = oldHashes[i];
+                values[index] = oldValues[i];
             }
         }
-
-        // Replace the old table with the new resized table
-        table = newTable;
     }
 
 
@@ -247,33 +240,25 @@ public class HashMap<K, V> {
     // Method to retrieve all keys stored in the HashMap
     public ArrayList<K> getKeys() {
         // Create an ArrayList to store the keys
-        ArrayList<K> keys = new ArrayList<>();
+        ArrayList<K> result = new ArrayList<>(size);
 
-        // Iterate through each bucket in the hash table
-        for (Entry<K, V> bucket : table) {
-            Entry<K, V> current = bucket; // Start at the head of the linked list in the bucket
-
-            // Traverse the linked list in the current bucket
-            while (current != null) {
-                // Add the current key to the list of keys
-                keys.add(current.key);
-
-                // Move to the next entry in the linked list
-                current = current.next;
+        // Every non-empty slot holds a key
+        for (K key : keys) {
+            if (key != null) {
+                result.add(key);
             }
         }
 
         // Return the list of keys
-        return keys;
+        return result;
     }
 
     // Method to get the value associated with a key, or return a default value if the key is not found
     public V getOrDefault(K key, V defaultValue) {
-        // Use the 'get' method to attempt retrieving the value for the given key
-        V value = get(key);
+        // Find the slot of the key
+        int index = indexOf(key);
 
-        // If the value is null (key not found), return the provided default value
-        return value == null ? defaultValue : value;
+        // If the key is not found, return the provided default value
+        return (index < 0) ? defaultValue : values[index];
     }
 }
-
@@ -0,0 +1,115 @@
+package truck;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Single operations on an AVL tree of size lots with the keys 0, 2, 4, ...
+// Every other lot holds a waiting truck, so the sums and the state counts are not all zero.
+// Insert and delete are measured as a pair on an odd key, which keeps the tree at its size.
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class AVLTreeBenchmarks {
+    private static final int KEYS = 1 << 12;  // Power of two, the key sequences are cycled through
+
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private AVLTree tree;
+    private ParkingLot[] lots;
+    private ParkingLot[] spareLots;  // Lots with odd keys that are not in the tree
+    private int[] searchKeys;
+    private int cursor;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(size);
+        tree = new AVLTree();
+        lots = new ParkingLot[size];
+        for (int i = 0; i < size; i++) {
+            lots[i] = new ParkingLot(2 * i, 4);
+            if ((i & 1) == 1) {
+                lots[i].getWaitingQueue().enqueue(0);
+            }
+        }
+        // Inserted in random order so the shape is the one the simulator gets from random keys
+        ParkingLot[] order = lots.clone();
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            ParkingLot swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        for (ParkingLot lot : order) {
+            tree.insert(lot);
+        }
+
+        spareLots = new ParkingLot[KEYS];
+        searchKeys = new int[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            spareLots[i] = new ParkingLot(2 * random.nextInt(size) + 1, 4);
+            searchKeys[i] = random.nextInt(2 * size);
+        }
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & (KEYS - 1);
+        return cursor;
+    }
+
+    @Benchmark
+    public ParkingLot insertDelete() {
+        ParkingLot lot = spareLots[next()];
+        tree.insert(lot);
+        return tree.delete(lot.getCapacityConstraint());
+    }
+
+    // A lot gains its first truck and loses it again, both changes reach the root
+    @Benchmark
+    public int refresh() {
+        ParkingLot lot = lots[searchKeys[next()] >> 1];
+        IntQueue readyQueue = lot.getReadyQueue();
+        readyQueue.enqueue(0);
+        tree.refresh(lot);
+        readyQueue.dequeue();
+        tree.refresh(lot);
+        return tree.sum(tree.root);
+    }
+
+    // Recomputes the aggregates along one path whether or not anything changed
+    @Benchmark
+    public int updatePath() {
+        AVLNode node = lots[searchKeys[next()] >> 1].node;
+        tree.updatePath(node);
+        return node.sum;
+    }
+
+    @Benchmark
+    public int countGreater() {
+        return tree.countGreater(searchKeys[next()]);
+    }
+
+    @Benchmark
+    public ParkingLot floorAvailable() {
+        return tree.floor(searchKeys[next()], LotIndex.AVAILABLE);
+    }
+
+    @Benchmark
+    public ParkingLot ceilingWaiting() {
+        return tree.ceiling(searchKeys[next()], LotIndex.WAITING);
+    }
+}
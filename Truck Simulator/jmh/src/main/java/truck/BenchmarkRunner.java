@@ -0,0 +1,42 @@
+package truck;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+
+// Entry point of benchmarks.jar, takes the usual JMH options and hands them to JMH's own main.
+// Unless the options say otherwise the gc profiler is on and the results go to jmh-result.json,
+// so every run leaves a file that can be compared with the runs of earlier commits.
+// Usage: java -jar benchmarks.jar [JMH options] [benchmark regexp...], for example
+//        java -jar benchmarks.jar AVLTreeBenchmarks -p size=1000000 -rff avl.json
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException, IOException {
+        CommandLineOptions options;
+        try {
+            options = new CommandLineOptions(args);
+        } catch (CommandLineOptionException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        ArrayList<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (options.shouldHelp() || options.shouldList() || options.shouldListWithParams()
+                || options.shouldListProfilers() || options.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        if (options.getProfilers().isEmpty()) {
+            jmhArgs.addAll(Arrays.asList("-prof", "gc"));
+        }
+        if (!options.getResultFormat().hasValue()) {
+            jmhArgs.addAll(Arrays.asList("-rf", "json"));
+        }
+        if (!options.getResult().hasValue()) {
+            jmhArgs.addAll(Arrays.asList("-rff", "jmh-result.json"));
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
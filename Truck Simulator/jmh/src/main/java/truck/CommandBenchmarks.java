@@ -0,0 +1,138 @@
+package truck;
+
+import java.io.OutputStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// add_truck, ready and load on a simulator set up the way Main sets it up, with lots lots at the keys
+// 10, 20, 30, ... and TRUCKS trucks of random capacity in them. The output is formatted and discarded.
+// ready and load use up the waiting and ready trucks. Before every iteration the trucks are moved back
+// into the queues they are taken from, which allocates nothing, so the gc profiler only sees the commands.
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 200, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class CommandBenchmarks {
+    private static final int TRUCKS = 1 << 21;
+    private static final int KEYS = 1 << 12;  // Power of two, the argument sequences are cycled through
+
+    @State(Scope.Thread)
+    public static class Filled {
+        @Param({"avl", "btree"})
+        String index;
+
+        @Param({"1000", "100000"})
+        int lots;
+
+        Simulator simulator;
+        ByteOutput output;
+        int[] keys;
+        int cursor;
+        int truckId;
+
+        ParkingLot[] parkingLots;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            simulator = new Simulator(index.equals("btree"), BitsetLotIndex.DEFAULT_UNIVERSE);
+            output = new ByteOutput(OutputStream.nullOutputStream());
+            simulator.setOutput(output);
+            for (int i = 1; i <= lots; i++) {
+                simulator.createParkingLot(10 * i, TRUCKS);
+            }
+            parkingLots = new ParkingLot[lots];
+            for (int i = 1; i <= lots; i++) {
+                parkingLots[i - 1] = simulator.getParkingLots().find(10 * i);
+            }
+            SplittableRandom random = new SplittableRandom(lots);
+            for (truckId = 0; truckId < TRUCKS; truckId++) {
+                simulator.addTruck(truckId, 1 + random.nextInt(10 * lots));
+                output.endLine();
+            }
+            keys = new int[KEYS];
+            for (int i = 0; i < KEYS; i++) {
+                keys[i] = 1 + random.nextInt(10 * lots);
+            }
+            cursor = 0;
+        }
+
+        int nextKey() {
+            cursor = (cursor + 1) & (KEYS - 1);
+            return keys[cursor];
+        }
+
+        // An iteration that ran out of trucks measured the -1 path instead, its numbers would be wrong
+        void checkLeft(int state) {
+            if (simulator.getParkingLots().ceiling(Integer.MIN_VALUE, state) == null) {
+                throw new IllegalStateException("The iteration ran out of trucks, raise TRUCKS");
+            }
+        }
+    }
+
+    // Every truck starts the iteration in its lot's ready queue
+    @State(Scope.Thread)
+    public static class Ready extends Filled {
+        @Setup(Level.Iteration)
+        public void readyAll() {
+            simulator.readyN(Integer.MIN_VALUE, Integer.MAX_VALUE);
+            output.endLine();
+        }
+
+        @TearDown(Level.Iteration)
+        public void check() {
+            checkLeft(LotIndex.READY);
+        }
+    }
+
+    // Every truck starts the iteration in its lot's waiting queue
+    @State(Scope.Thread)
+    public static class Waiting extends Filled {
+        @Setup(Level.Iteration)
+        public void unreadyAll() {
+            for (ParkingLot lot : parkingLots) {
+                IntQueue readyQueue = lot.getReadyQueue();
+                readyQueue.transferTo(lot.getWaitingQueue(), readyQueue.size());
+                simulator.getParkingLots().refresh(lot);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void check() {
+            checkLeft(LotIndex.WAITING);
+        }
+    }
+
+    @Benchmark
+    public void addTruck(Filled state) {
+        state.simulator.addTruck(state.truckId++, state.nextKey());
+        state.output.endLine();
+    }
+
+    @Benchmark
+    public void ready(Waiting state) {
+        state.simulator.ready(state.nextKey());
+        state.output.endLine();
+    }
+
+    // Loads about one lot's capacity, which releases a truck or two and places them again
+    @Benchmark
+    public void load(Ready state) {
+        int key = state.nextKey();
+        state.simulator.load(key, key);
+        state.output.endLine();
+    }
+}
@@ -0,0 +1,65 @@
+package truck;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The queues of a lot holding size trucks, every benchmark leaves them as it found them
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IntQueueBenchmarks {
+    private static final int BLOCK = 64;
+
+    @Param({"16", "4096"})
+    private int size;
+
+    private IntQueue waiting;
+    private IntQueue ready;
+    private final int[] block = new int[BLOCK];
+
+    @Setup
+    public void setup() {
+        waiting = new IntQueue();
+        ready = new IntQueue();
+        for (int i = 0; i < size; i++) {
+            waiting.enqueue(i);
+        }
+    }
+
+    // One truck joins the back of the waiting queue and the front one leaves, the ring keeps rotating
+    @Benchmark
+    public int enqueueDequeue() {
+        waiting.enqueue(size);
+        return waiting.dequeue();
+    }
+
+    // ready_n's bulk move, there and back again
+    @Benchmark
+    public int transfer() {
+        int moved = waiting.transferTo(ready, BLOCK);
+        return moved + ready.transferTo(waiting, moved);
+    }
+
+    // The load fast path drains a block and the trucks are queued again one by one
+    @Benchmark
+    public int dequeueBlock() {
+        int count = waiting.dequeue(block, 0, BLOCK);
+        for (int i = 0; i < count; i++) {
+            waiting.enqueue(block[i]);
+        }
+        return count;
+    }
+}
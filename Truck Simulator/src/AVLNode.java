@@ -0,0 +1,20 @@
+class AVLNode {
+    int key, height, size;  // size counts the live nodes of the subtree
+    int leftSum, rightSum, sum;
+    int available, waiting, ready;  // Number of lots in this subtree in each state
+    int flags;  // States of this node's own lot, one bit per state
+    boolean dead;  // Deleted lazily, the node only keeps its place in the tree
+    AVLNode left, right, parent;
+    ParkingLot parkingLot;
+
+    public AVLNode(ParkingLot parkingLot, AVLNode parent) {
+        this.key = parkingLot.getCapacityConstraint();
+        this.parkingLot = parkingLot;
+        parkingLot.node = this;
+        height = 0;
+        this.parent = parent;
+        this.leftSum = 0;
+        this.rightSum = 0;
+        this.sum = 0;
+    }
+}
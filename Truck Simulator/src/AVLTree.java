@@ -1,29 +1,31 @@
-class AVLNode {
-    int key, height;
-    int leftSum, rightSum, sum;
-    AVLNode left, right, parent;
-    ParkingLot parkingLot;
+public class AVLTree implements LotIndex {
+    // Pseudo state of every live node, searches in it skip the dead ones
+    private static final int LIVE = 3;
 
-    public AVLNode(ParkingLot parkingLot, AVLNode parent) {
-        this.key = parkingLot.getCapacityConstraint();
-        this.parkingLot = parkingLot;
-        height = 0;
-        this.parent = parent;
-        this.leftSum = 0;
-        this.rightSum = 0;
-        this.sum = 0;
-    }
+    public AVLNode root;
 
-    public void updateSum() {
-        this.sum = this.parkingLot.getReadyQueue().size() + this.parkingLot.getWaitingQueue().size();
-    }
-}
+    // Trucks of lots with keys in [0, countedLimit) are counted by a CapacityIndex,
+    // the truck sums of the tree only cover the lots outside that range
+    private final int countedLimit;
 
-public class AVLTree {
-    public AVLNode root;
+    // With lazy deletion a deleted lot's node is only marked dead: it drops out of every aggregate at once and
+    // no rotation happens. A dead node is revived if its key is inserted again, and the tree is rebuilt
+    // without the dead nodes once they make up more than tombstoneFraction of it. 0 deletes eagerly.
+    private final double tombstoneFraction;
+    private int tombstones;
 
     public AVLTree() {
+        this(0);
+    }
+
+    public AVLTree(int countedLimit) {
+        this(countedLimit, 0);
+    }
+
+    public AVLTree(int countedLimit, double tombstoneFraction) {
         this.root = null;
+        this.countedLimit = countedLimit;
+        this.tombstoneFraction = tombstoneFraction;
     }
 
     public int height(AVLNode node) {
@@ -34,44 +36,112 @@ public class AVLTree {
         return (node == null) ? 0 : node.sum + node.leftSum + node.rightSum;
     }
 
+    // Number of lots in the subtree that are in the given state
+    public int count(AVLNode node, int state) {
+        if (node == null) {
+            return 0;
+        }
+        switch (state) {
+            case AVAILABLE:
+                return node.available;
+            case WAITING:
+                return node.waiting;
+            case READY:
+                return node.ready;
+            default:
+                return node.size;
+        }
+    }
+
+    // Whether the lot of this node itself is in the given state
+    public boolean inState(AVLNode node, int state) {
+        if (node.dead) {
+            return false;
+        }
+        switch (state) {
+            case AVAILABLE:
+                return !node.parkingLot.isFull();
+            case WAITING:
+                return !node.parkingLot.getWaitingQueue().isEmpty();
+            case READY:
+                return !node.parkingLot.getReadyQueue().isEmpty();
+            default:
+                return true;
+        }
+    }
+
     public int balanceFactor(AVLNode node) {
         if (node == null)
             return 0;
         return height(node.left) - height(node.right);
     }
 
-    public void updateSumTree(AVLNode node) {
-        AVLNode current = this.root;
+    // Current state bits of the node's own lot
+    private int flags(AVLNode node) {
+        return (inState(node, AVAILABLE) ? 1 << AVAILABLE : 0)
+                | (inState(node, WAITING) ? 1 << WAITING : 0)
+                | (inState(node, READY) ? 1 << READY : 0);
+    }
 
-        while (current.key != node.key) {
-            if (current.key < node.key) {
-                current = current.right;
-            } else {
-                current = current.left;
-            }
+    // Trucks of the node's own lot that are summed by the tree
+    private int ownSum(AVLNode node) {
+        if (node.dead || (node.key >= 0 && node.key < countedLimit)) {
+            return 0;
         }
+        return node.parkingLot.getTruckCount();
+    }
 
-        while (current.parent != null) {
-
-            current.updateSum();
+    // Recomputes the size, truck sums and state counts of a node from its lot and children
+    public void update(AVLNode node) {
+        node.sum = ownSum(node);
+        node.flags = flags(node);
+        node.size = size(node.left) + size(node.right) + (node.dead ? 0 : 1);
+        node.leftSum = sum(node.left);
+        node.rightSum = sum(node.right);
+        node.available = count(node.left, AVAILABLE) + count(node.right, AVAILABLE) + (node.flags >> AVAILABLE & 1);
+        node.waiting = count(node.left, WAITING) + count(node.right, WAITING) + (node.flags >> WAITING & 1);
+        node.ready = count(node.left, READY) + count(node.right, READY) + (node.flags >> READY & 1);
+    }
 
-            current.leftSum = sum(current.left);
-            current.rightSum = sum(current.right);
+    // Refreshes the aggregates from the given node up to the root after its lot has changed
+    public void updatePath(AVLNode node) {
+        AVLNode current = node;
+        while (current != null) {
+            update(current);
             current = current.parent;
         }
-        current.updateSum();
-        current.leftSum = sum(current.left);
-        current.rightSum = sum(current.right);
+    }
+
+    // Refreshes the aggregates only if the lot's states or summed trucks changed
+    public void refresh(AVLNode node) {
+        if (node.flags != flags(node) || node.sum != ownSum(node)) {
+            updatePath(node);
+        }
+    }
+
+    // Returns the node with the given key, or null
+    public AVLNode findNode(int key) {
+        AVLNode current = root;
+        int depth = 0;
+        while (current != null && current.key != key) {
+            current = (key < current.key) ? current.left : current.right;
+            depth++;
+        }
+        if (Stats.ENABLED) {
+            Stats.recordSearchDepth(depth);
+        }
+        return current;
     }
 
     public AVLNode rightRotate(AVLNode y) {
+        if (Stats.ENABLED) {
+            Stats.rotations++;
+        }
         AVLNode x = y.left;
         AVLNode T2 = x.right;
 
         x.right = y;
-        x.rightSum = sum(y);
         y.left = T2;
-        y.leftSum = sum(T2);
 
         if (T2 != null) T2.parent = y;
         x.parent = y.parent;
@@ -79,18 +149,21 @@ public class AVLTree {
 
         y.height = Math.max(height(y.left), height(y.right)) + 1;
         x.height = Math.max(height(x.left), height(x.right)) + 1;
+        update(y);
+        update(x);
 
         return x;
     }
 
     public AVLNode leftRotate(AVLNode x) {
+        if (Stats.ENABLED) {
+            Stats.rotations++;
+        }
         AVLNode y = x.right;
         AVLNode T2 = y.left;
 
         y.left = x;
-        y.leftSum = sum(x);
         x.right = T2;
-        x.rightSum = sum(T2);
 
         if (T2 != null) T2.parent = x;
         y.parent = x.parent;
@@ -98,26 +171,37 @@ public class AVLTree {
 
         x.height = Math.max(height(x.left), height(x.right)) + 1;
         y.height = Math.max(height(y.left), height(y.right)) + 1;
+        update(x);
+        update(y);
 
         return y;
     }
 
     public AVLNode insert(AVLNode root, AVLNode parent, ParkingLot parkingLot) {
-        if (root == null)
-            return new AVLNode(parkingLot, parent);
+        if (root == null) {
+            AVLNode node = new AVLNode(parkingLot, parent);
+            update(node);
+            return node;
+        }
 
         if (parkingLot.getCapacityConstraint() < root.key) {
             root.left = insert(root.left, root, parkingLot);
         } else if (parkingLot.getCapacityConstraint() > root.key) {
             root.right = insert(root.right, root, parkingLot);
         } else {
+            if (root.dead) {
+                // The key is back, its node takes the new lot and the ancestors are updated on the way up
+                root.dead = false;
+                root.parkingLot = parkingLot;
+                parkingLot.node = root;
+                tombstones--;
+                update(root);
+            }
             return root;
         }
 
         root.height = 1 + Math.max(height(root.left), height(root.right));
-        root.leftSum = sum(root.left);
-        root.rightSum = sum(root.right);
-
+        update(root);
 
         int balance = balanceFactor(root);
 
@@ -166,12 +250,10 @@ public class AVLTree {
                 // Node with two children
                 AVLNode successor = findSuccessor(root.right);
 
-                // Copy the successor's key and other values to the current node
+                // Copy the successor's key and lot to the current node, aggregates are recomputed below
                 root.key = successor.key;
                 root.parkingLot = successor.parkingLot;
-                root.leftSum = successor.leftSum;
-                root.rightSum = successor.rightSum;
-                root.sum = successor.sum;
+                root.parkingLot.node = root;
 
                 // Delete the successor
                 root.right = delete(root.right, successor.key);
@@ -183,10 +265,9 @@ public class AVLTree {
             return root;
         }
 
-        // Update height and balance factors
+        // Update height and aggregates
         root.height = Math.max(height(root.left), height(root.right)) + 1;
-        root.leftSum = sum(root.left);
-        root.rightSum = sum(root.right);
+        update(root);
 
         // Balance the tree if it has become unbalanced
         int balance = balanceFactor(root);
@@ -222,4 +303,363 @@ public class AVLTree {
             current = current.left;
         return current;
     }
+
+    // Number of nodes in the subtree
+    public int size(AVLNode node) {
+        return (node == null) ? 0 : node.size;
+    }
+
+    // A large batch is merged with the existing nodes and the tree is rebuilt perfectly balanced in linear time,
+    // a batch that is small compared to the tree is inserted one by one.
+    @Override
+    public void insertAll(ParkingLot[] lots, int count) {
+        int size = size(root);
+        if ((long) count * (32 - Integer.numberOfLeadingZeros(size)) < size) {
+            for (int i = 0; i < count; i++) {
+                root = insert(root, null, lots[i]);
+            }
+            return;
+        }
+
+        // Merge the existing nodes in order with new nodes for the lots, dead nodes are dropped on the way
+        AVLNode[] nodes = new AVLNode[size + count];
+        int merged = 0;
+        int next = 0;
+        AVLNode current = (root == null) ? null : findSuccessor(root);
+        while (current != null || next < count) {
+            if (current != null && current.dead) {
+                current = successor(current);
+            } else if (current == null || (next < count && lots[next].getCapacityConstraint() < current.key)) {
+                nodes[merged++] = new AVLNode(lots[next++], null);
+            } else {
+                if (next < count && lots[next].getCapacityConstraint() == current.key) {
+                    next++;
+                }
+                nodes[merged++] = current;
+                current = successor(current);
+            }
+        }
+        root = build(nodes, 0, merged - 1, null);
+        tombstones = 0;
+    }
+
+    // Relinks the live nodes into a perfectly balanced tree
+    private void rebuild() {
+        AVLNode[] nodes = new AVLNode[size(root)];
+        int live = 0;
+        for (AVLNode node = (root == null) ? null : findSuccessor(root); node != null; node = successor(node)) {
+            if (!node.dead) {
+                nodes[live++] = node;
+            }
+        }
+        root = build(nodes, 0, live - 1, null);
+        tombstones = 0;
+    }
+
+    // Links nodes[lo..hi], sorted by key, into a perfectly balanced subtree
+    private AVLNode build(AVLNode[] nodes, int lo, int hi, AVLNode parent) {
+        if (lo > hi) {
+            return null;
+        }
+        int mid = (lo + hi) >>> 1;
+        AVLNode node = nodes[mid];
+        node.parent = parent;
+        node.left = build(nodes, lo, mid - 1, node);
+        node.right = build(nodes, mid + 1, hi, node);
+        node.height = Math.max(height(node.left), height(node.right)) + 1;
+        update(node);
+        return node;
+    }
+
+    // Returns the node with the largest key <= key, or null
+    public AVLNode floorNode(int key) {
+        AVLNode current = root;
+        AVLNode candidate = null;
+        int depth = 0;
+        while (current != null) {
+            depth++;
+            if (current.key > key) {
+                current = current.left;
+            } else {
+                candidate = current;
+                current = current.right;
+            }
+        }
+        if (Stats.ENABLED) {
+            Stats.recordSearchDepth(depth);
+        }
+        return candidate;
+    }
+
+    // Returns the node with the smallest key >= key, or null
+    public AVLNode ceilingNode(int key) {
+        AVLNode current = root;
+        AVLNode candidate = null;
+        int depth = 0;
+        while (current != null) {
+            depth++;
+            if (current.key < key) {
+                current = current.right;
+            } else {
+                candidate = current;
+                current = current.left;
+            }
+        }
+        if (Stats.ENABLED) {
+            Stats.recordSearchDepth(depth);
+        }
+        return candidate;
+    }
+
+    // In-order successor found through parent pointers, or null for the last node
+    public AVLNode successor(AVLNode node) {
+        if (node.right != null) {
+            return findSuccessor(node.right);
+        }
+        while (node.parent != null && node == node.parent.right) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    // In-order predecessor found through parent pointers, or null for the first node
+    public AVLNode predecessor(AVLNode node) {
+        if (node.left != null) {
+            node = node.left;
+            while (node.right != null) {
+                node = node.right;
+            }
+            return node;
+        }
+        while (node.parent != null && node == node.parent.left) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    // Next node after the given one whose lot is in the given state, or null.
+    // Only parent pointers and subtree counts are used, so a node stays a valid cursor
+    // while lot states change as long as no lot is inserted or deleted.
+    public AVLNode next(AVLNode node, int state) {
+        if (count(node.right, state) > 0) {
+            return first(node.right, state);
+        }
+        while (node.parent != null) {
+            if (node == node.parent.left) {
+                if (inState(node.parent, state)) {
+                    return node.parent;
+                }
+                if (count(node.parent.right, state) > 0) {
+                    return first(node.parent.right, state);
+                }
+            }
+            node = node.parent;
+        }
+        return null;
+    }
+
+    // Previous node before the given one whose lot is in the given state, or null
+    public AVLNode previous(AVLNode node, int state) {
+        if (count(node.left, state) > 0) {
+            return last(node.left, state);
+        }
+        while (node.parent != null) {
+            if (node == node.parent.right) {
+                if (inState(node.parent, state)) {
+                    return node.parent;
+                }
+                if (count(node.parent.left, state) > 0) {
+                    return last(node.parent.left, state);
+                }
+            }
+            node = node.parent;
+        }
+        return null;
+    }
+
+    // Returns the node with the largest key <= key whose lot is in the given state, or null
+    public AVLNode floorNode(int key, int state) {
+        AVLNode current = root;
+        AVLNode candidate = null;
+        int depth = 0;
+
+        // The last node on the search path with key <= key and a match in itself or its left subtree wins,
+        // since everything found later on the path lies to its right
+        while (current != null) {
+            depth++;
+            if (current.key > key) {
+                current = current.left;
+            } else {
+                if (inState(current, state) || count(current.left, state) > 0) {
+                    candidate = current;
+                }
+                current = current.right;
+            }
+        }
+
+        if (Stats.ENABLED) {
+            Stats.recordSearchDepth(depth);
+        }
+        if (candidate == null || inState(candidate, state)) {
+            return candidate;
+        }
+        return last(candidate.left, state);
+    }
+
+    // Returns the node with the smallest key >= key whose lot is in the given state, or null
+    public AVLNode ceilingNode(int key, int state) {
+        AVLNode current = root;
+        AVLNode candidate = null;
+        int depth = 0;
+
+        while (current != null) {
+            depth++;
+            if (current.key < key) {
+                current = current.right;
+            } else {
+                if (inState(current, state) || count(current.right, state) > 0) {
+                    candidate = current;
+                }
+                current = current.left;
+            }
+        }
+
+        if (Stats.ENABLED) {
+            Stats.recordSearchDepth(depth);
+        }
+        if (candidate == null || inState(candidate, state)) {
+            return candidate;
+        }
+        return first(candidate.right, state);
+    }
+
+    // Smallest node of the subtree in the given state, the subtree must contain one
+    private AVLNode first(AVLNode node, int state) {
+        while (true) {
+            if (count(node.left, state) > 0) {
+                node = node.left;
+            } else if (inState(node, state)) {
+                return node;
+            } else {
+                node = node.right;
+            }
+        }
+    }
+
+    // Largest node of the subtree in the given state, the subtree must contain one
+    private AVLNode last(AVLNode node, int state) {
+        while (true) {
+            if (count(node.right, state) > 0) {
+                node = node.right;
+            } else if (inState(node, state)) {
+                return node;
+            } else {
+                node = node.left;
+            }
+        }
+    }
+
+    // Total number of summed trucks in lots with a key strictly greater than the given key
+    @Override
+    public int countGreater(int key) {
+        AVLNode current = root;
+        int total = 0;
+        while (current != null) {
+            if (current.key > key) {
+                total += current.sum + current.rightSum;
+                current = current.left;
+            } else {
+                current = current.right;
+            }
+        }
+        return total;
+    }
+
+    // Total number of summed trucks in lots with lo <= key <= hi
+    @Override
+    public int countRange(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        int atLeastLo = (lo == Integer.MIN_VALUE) ? sum(root) : countGreater(lo - 1);
+        return atLeastLo - countGreater(hi);
+    }
+
+    private static ParkingLot lotOf(AVLNode node) {
+        return (node == null) ? null : node.parkingLot;
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public ParkingLot find(int key) {
+        AVLNode node = findNode(key);
+        return (node == null || node.dead) ? null : node.parkingLot;
+    }
+
+    @Override
+    public void insert(ParkingLot lot) {
+        root = insert(root, null, lot);
+    }
+
+    @Override
+    public ParkingLot delete(int key) {
+        ParkingLot lot = find(key);
+        if (lot == null) {
+            return null;
+        }
+        if (tombstoneFraction <= 0) {
+            root = delete(root, key);
+            return lot;
+        }
+
+        AVLNode node = lot.node;
+        node.dead = true;
+        node.parkingLot = null;
+        tombstones++;
+        updatePath(node);
+        if (tombstones > tombstoneFraction * (size(root) + tombstones)) {
+            rebuild();
+        }
+        return lot;
+    }
+
+    // Plain searches only have to step over dead nodes while there are any
+    @Override
+    public ParkingLot ceiling(int key) {
+        return lotOf((tombstones == 0) ? ceilingNode(key) : ceilingNode(key, LIVE));
+    }
+
+    @Override
+    public ParkingLot floor(int key) {
+        return lotOf((tombstones == 0) ? floorNode(key) : floorNode(key, LIVE));
+    }
+
+    @Override
+    public ParkingLot next(ParkingLot lot) {
+        return lotOf((tombstones == 0) ? successor(lot.node) : next(lot.node, LIVE));
+    }
+
+    @Override
+    public ParkingLot ceiling(int key, int state) {
+        return lotOf(ceilingNode(key, state));
+    }
+
+    @Override
+    public ParkingLot floor(int key, int state) {
+        return lotOf(floorNode(key, state));
+    }
+
+    @Override
+    public ParkingLot next(ParkingLot lot, int state) {
+        return lotOf(next(lot.node, state));
+    }
+
+    @Override
+    public void refresh(ParkingLot lot) {
+        refresh(lot.node);
+    }
 }
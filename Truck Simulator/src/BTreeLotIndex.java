@@ -0,0 +1,576 @@
+class BTreeNode {
+    boolean leaf;
+    int size;  // Number of used entries
+    int[] keys;  // Lot keys in a leaf, smallest key of each child subtree in an internal node
+    int[] available, waiting, ready;  // Number of lots in each state per entry, 0 or 1 in a leaf
+    int[] sums;  // Summed trucks per entry
+    ParkingLot[] lots;  // Only used by leaves
+    BTreeNode[] children;  // Only used by internal nodes
+
+    public BTreeNode(boolean leaf) {
+        this.leaf = leaf;
+        this.size = 0;
+        this.keys = new int[BTreeLotIndex.MAX_ENTRIES];
+        this.available = new int[BTreeLotIndex.MAX_ENTRIES];
+        this.waiting = new int[BTreeLotIndex.MAX_ENTRIES];
+        this.ready = new int[BTreeLotIndex.MAX_ENTRIES];
+        this.sums = new int[BTreeLotIndex.MAX_ENTRIES];
+        if (leaf) {
+            lots = new ParkingLot[BTreeLotIndex.MAX_ENTRIES];
+        } else {
+            children = new BTreeNode[BTreeLotIndex.MAX_ENTRIES];
+        }
+    }
+}
+
+// B+ tree over the parking lots. Every node keeps its keys and per-entry aggregates in small int arrays,
+// so searches scan contiguous memory instead of chasing one pointer per level like the AVL tree.
+// Lots only live in the leaves, an internal entry holds the state counts and truck sum of its whole child.
+public class BTreeLotIndex implements LotIndex {
+    static final int MAX_ENTRIES = 32;
+    static final int MIN_ENTRIES = MAX_ENTRIES / 2;
+    private static final int ANY = -1;  // State matching every lot
+    private static final int MAX_DEPTH = 16;
+
+    private BTreeNode root;
+    private int lotCount;
+
+    // Trucks of lots with keys in [0, countedLimit) are counted by a CapacityIndex,
+    // the truck sums of the tree only cover the lots outside that range
+    private final int countedLimit;
+
+    // Search path reused by refresh
+    private final BTreeNode[] pathNodes = new BTreeNode[MAX_DEPTH];
+    private final int[] pathIndexes = new int[MAX_DEPTH];
+
+    public BTreeLotIndex() {
+        this(0);
+    }
+
+    public BTreeLotIndex(int countedLimit) {
+        this.root = new BTreeNode(true);
+        this.lotCount = 0;
+        this.countedLimit = countedLimit;
+    }
+
+    private static boolean matches(BTreeNode node, int i, int state) {
+        switch (state) {
+            case AVAILABLE:
+                return node.available[i] > 0;
+            case WAITING:
+                return node.waiting[i] > 0;
+            case READY:
+                return node.ready[i] > 0;
+            default:
+                return true;
+        }
+    }
+
+    // Index of the child whose subtree may hold the key, the first child takes keys below all separators
+    private static int childIndex(BTreeNode node, int key) {
+        int i = 1;
+        while (i < node.size && node.keys[i] <= key) {
+            i++;
+        }
+        return i - 1;
+    }
+
+    // Index of the first entry with a key >= key, or size
+    private static int lowerBound(BTreeNode node, int key) {
+        int i = 0;
+        while (i < node.size && node.keys[i] < key) {
+            i++;
+        }
+        return i;
+    }
+
+    // Trucks of the lot that are summed by the tree
+    private int ownSum(ParkingLot lot) {
+        int key = lot.getCapacityConstraint();
+        if (key >= 0 && key < countedLimit) {
+            return 0;
+        }
+        return lot.getTruckCount();
+    }
+
+    // Fills leaf entry i from the current state of the lot
+    private void setEntry(BTreeNode leaf, int i, ParkingLot lot) {
+        leaf.keys[i] = lot.getCapacityConstraint();
+        leaf.lots[i] = lot;
+        leaf.available[i] = lot.isFull() ? 0 : 1;
+        leaf.waiting[i] = lot.getWaitingQueue().isEmpty() ? 0 : 1;
+        leaf.ready[i] = lot.getReadyQueue().isEmpty() ? 0 : 1;
+        leaf.sums[i] = ownSum(lot);
+    }
+
+    // Recomputes internal entry i from the entries of its child
+    private static void summarize(BTreeNode node, int i) {
+        BTreeNode child = node.children[i];
+        int available = 0;
+        int waiting = 0;
+        int ready = 0;
+        int sum = 0;
+        for (int j = 0; j < child.size; j++) {
+            available += child.available[j];
+            waiting += child.waiting[j];
+            ready += child.ready[j];
+            sum += child.sums[j];
+        }
+        node.keys[i] = child.keys[0];
+        node.available[i] = available;
+        node.waiting[i] = waiting;
+        node.ready[i] = ready;
+        node.sums[i] = sum;
+    }
+
+    // Copies entries [from, from + count) of a node to position to of another node of the same kind
+    private static void copyEntries(BTreeNode source, int from, BTreeNode target, int to, int count) {
+        System.arraycopy(source.keys, from, target.keys, to, count);
+        System.arraycopy(source.available, from, target.available, to, count);
+        System.arraycopy(source.waiting, from, target.waiting, to, count);
+        System.arraycopy(source.ready, from, target.ready, to, count);
+        System.arraycopy(source.sums, from, target.sums, to, count);
+        if (source.leaf) {
+            System.arraycopy(source.lots, from, target.lots, to, count);
+        } else {
+            System.arraycopy(source.children, from, target.children, to, count);
+        }
+    }
+
+    // Opens a gap at position i, the node must have room
+    private static void openGap(BTreeNode node, int i) {
+        copyEntries(node, i, node, i + 1, node.size - i);
+        node.size++;
+    }
+
+    // Removes entry i and clears the freed reference
+    private static void removeEntry(BTreeNode node, int i) {
+        copyEntries(node, i + 1, node, i, node.size - i - 1);
+        node.size--;
+        if (node.leaf) {
+            node.lots[node.size] = null;
+        } else {
+            node.children[node.size] = null;
+        }
+    }
+
+    @Override
+    public int size() {
+        return lotCount;
+    }
+
+    @Override
+    public ParkingLot find(int key) {
+        BTreeNode node = root;
+        while (!node.leaf) {
+            node = node.children[childIndex(node, key)];
+        }
+        int i = lowerBound(node, key);
+        return (i < node.size && node.keys[i] == key) ? node.lots[i] : null;
+    }
+
+    @Override
+    public void insert(ParkingLot lot) {
+        BTreeNode sibling = insert(root, lot);
+        if (sibling != null) {
+            BTreeNode newRoot = new BTreeNode(false);
+            newRoot.size = 2;
+            newRoot.children[0] = root;
+            newRoot.children[1] = sibling;
+            summarize(newRoot, 0);
+            summarize(newRoot, 1);
+            root = newRoot;
+        }
+    }
+
+    // Inserts the lot into the subtree, returns the new right sibling if the node was split
+    private BTreeNode insert(BTreeNode node, ParkingLot lot) {
+        int key = lot.getCapacityConstraint();
+        if (node.leaf) {
+            int i = lowerBound(node, key);
+            if (i < node.size && node.keys[i] == key) {
+                return null;
+            }
+            lotCount++;
+            if (node.size < MAX_ENTRIES) {
+                openGap(node, i);
+                setEntry(node, i, lot);
+                return null;
+            }
+            BTreeNode sibling = split(node);
+            if (i <= node.size) {
+                openGap(node, i);
+                setEntry(node, i, lot);
+            } else {
+                i -= node.size;
+                openGap(sibling, i);
+                setEntry(sibling, i, lot);
+            }
+            return sibling;
+        }
+
+        int i = childIndex(node, key);
+        BTreeNode newChild = insert(node.children[i], lot);
+        summarize(node, i);
+        if (newChild == null) {
+            return null;
+        }
+        BTreeNode target = node;
+        BTreeNode sibling = null;
+        if (node.size == MAX_ENTRIES) {
+            sibling = split(node);
+            if (i >= node.size) {
+                target = sibling;
+                i -= node.size;
+            }
+        }
+        openGap(target, i + 1);
+        target.children[i + 1] = newChild;
+        summarize(target, i + 1);
+        return sibling;
+    }
+
+    // Moves the upper half of a full node into a new right sibling
+    private static BTreeNode split(BTreeNode node) {
+        BTreeNode sibling = new BTreeNode(node.leaf);
+        int half = node.size / 2;
+        sibling.size = node.size - half;
+        copyEntries(node, half, sibling, 0, sibling.size);
+        while (node.size > half) {
+            node.size--;
+            if (node.leaf) {
+                node.lots[node.size] = null;
+            } else {
+                node.children[node.size] = null;
+            }
+        }
+        return sibling;
+    }
+
+    // A large batch is merged with the existing lots and the tree is rebuilt bottom-up in linear time,
+    // a batch that is small compared to the tree is inserted one by one.
+    @Override
+    public void insertAll(ParkingLot[] lots, int count) {
+        if ((long) count * (32 - Integer.numberOfLeadingZeros(lotCount)) < lotCount) {
+            for (int i = 0; i < count; i++) {
+                insert(lots[i]);
+            }
+            return;
+        }
+
+        ParkingLot[] existing = new ParkingLot[lotCount];
+        collect(root, existing, 0);
+        ParkingLot[] merged = new ParkingLot[lotCount + count];
+        int mergedCount = 0;
+        int i = 0;
+        int next = 0;
+        while (i < existing.length || next < count) {
+            if (i == existing.length
+                    || (next < count && lots[next].getCapacityConstraint() < existing[i].getCapacityConstraint())) {
+                merged[mergedCount++] = lots[next++];
+            } else {
+                if (next < count && lots[next].getCapacityConstraint() == existing[i].getCapacityConstraint()) {
+                    next++;
+                }
+                merged[mergedCount++] = existing[i++];
+            }
+        }
+        build(merged, mergedCount);
+    }
+
+    // Writes the lots of the subtree in key order starting at position, returns the next position
+    private int collect(BTreeNode node, ParkingLot[] target, int position) {
+        if (node.leaf) {
+            System.arraycopy(node.lots, 0, target, position, node.size);
+            return position + node.size;
+        }
+        for (int i = 0; i < node.size; i++) {
+            position = collect(node.children[i], target, position);
+        }
+        return position;
+    }
+
+    // Replaces the tree with one built from lots[0..count) sorted by key.
+    // Every level is split into as few nodes as possible with entries spread evenly,
+    // so each node except a lone root holds at least MIN_ENTRIES entries.
+    private void build(ParkingLot[] lots, int count) {
+        lotCount = count;
+        int nodeCount = Math.max(1, (count + MAX_ENTRIES - 1) / MAX_ENTRIES);
+        BTreeNode[] level = new BTreeNode[nodeCount];
+        int position = 0;
+        for (int n = 0; n < nodeCount; n++) {
+            BTreeNode leaf = new BTreeNode(true);
+            int entries = count / nodeCount + (n < count % nodeCount ? 1 : 0);
+            for (int i = 0; i < entries; i++) {
+                setEntry(leaf, i, lots[position++]);
+            }
+            leaf.size = entries;
+            level[n] = leaf;
+        }
+
+        while (nodeCount > 1) {
+            int parentCount = (nodeCount + MAX_ENTRIES - 1) / MAX_ENTRIES;
+            BTreeNode[] parents = new BTreeNode[parentCount];
+            position = 0;
+            for (int n = 0; n < parentCount; n++) {
+                BTreeNode parent = new BTreeNode(false);
+                int entries = nodeCount / parentCount + (n < nodeCount % parentCount ? 1 : 0);
+                for (int i = 0; i < entries; i++) {
+                    parent.children[i] = level[position++];
+                    summarize(parent, i);
+                }
+                parent.size = entries;
+                parents[n] = parent;
+            }
+            level = parents;
+            nodeCount = parentCount;
+        }
+        root = level[0];
+    }
+
+    @Override
+    public ParkingLot delete(int key) {
+        ParkingLot lot = delete(root, key);
+        if (!root.leaf && root.size == 1) {
+            root = root.children[0];
+        }
+        return lot;
+    }
+
+    // Removes the lot from the subtree and returns it, or returns null.
+    // A child left with too few entries borrows from or is merged with a neighbour.
+    private ParkingLot delete(BTreeNode node, int key) {
+        if (node.leaf) {
+            int i = lowerBound(node, key);
+            if (i == node.size || node.keys[i] != key) {
+                return null;
+            }
+            ParkingLot lot = node.lots[i];
+            removeEntry(node, i);
+            lotCount--;
+            return lot;
+        }
+
+        int i = childIndex(node, key);
+        ParkingLot lot = delete(node.children[i], key);
+        if (lot == null) {
+            return null;
+        }
+        if (node.children[i].size >= MIN_ENTRIES) {
+            summarize(node, i);
+            return lot;
+        }
+
+        // Work on the pair formed by the child and its right neighbour, or its left one for the last child
+        int left = (i + 1 < node.size) ? i : i - 1;
+        BTreeNode leftChild = node.children[left];
+        BTreeNode rightChild = node.children[left + 1];
+        if (leftChild.size + rightChild.size <= MAX_ENTRIES) {
+            copyEntries(rightChild, 0, leftChild, leftChild.size, rightChild.size);
+            leftChild.size += rightChild.size;
+            removeEntry(node, left + 1);
+        } else if (leftChild.size < rightChild.size) {
+            copyEntries(rightChild, 0, leftChild, leftChild.size, 1);
+            leftChild.size++;
+            removeEntry(rightChild, 0);
+            summarize(node, left + 1);
+        } else {
+            openGap(rightChild, 0);
+            copyEntries(leftChild, leftChild.size - 1, rightChild, 0, 1);
+            removeEntry(leftChild, leftChild.size - 1);
+            summarize(node, left + 1);
+        }
+        summarize(node, left);
+        return lot;
+    }
+
+    @Override
+    public ParkingLot ceiling(int key) {
+        return ceiling(root, key, ANY);
+    }
+
+    @Override
+    public ParkingLot floor(int key) {
+        return floor(root, key, ANY);
+    }
+
+    @Override
+    public ParkingLot next(ParkingLot lot) {
+        int key = lot.getCapacityConstraint();
+        return (key == Integer.MAX_VALUE) ? null : ceiling(root, key + 1, ANY);
+    }
+
+    @Override
+    public ParkingLot ceiling(int key, int state) {
+        return ceiling(root, key, state);
+    }
+
+    @Override
+    public ParkingLot floor(int key, int state) {
+        return floor(root, key, state);
+    }
+
+    // Searching again from the root is cheap with the tree this shallow,
+    // and it keeps lots free of references into the nodes.
+    @Override
+    public ParkingLot next(ParkingLot lot, int state) {
+        int key = lot.getCapacityConstraint();
+        return (key == Integer.MAX_VALUE) ? null : ceiling(root, key + 1, state);
+    }
+
+    // Lot with the smallest key >= key in the subtree in the given state, or null
+    private ParkingLot ceiling(BTreeNode node, int key, int state) {
+        if (node.leaf) {
+            for (int i = lowerBound(node, key); i < node.size; i++) {
+                if (matches(node, i, state)) {
+                    return node.lots[i];
+                }
+            }
+            return null;
+        }
+        int i = childIndex(node, key);
+        if (matches(node, i, state)) {
+            ParkingLot lot = ceiling(node.children[i], key, state);
+            if (lot != null) {
+                return lot;
+            }
+        }
+        for (i++; i < node.size; i++) {
+            if (matches(node, i, state)) {
+                return first(node.children[i], state);
+            }
+        }
+        return null;
+    }
+
+    // Lot with the largest key <= key in the subtree in the given state, or null
+    private ParkingLot floor(BTreeNode node, int key, int state) {
+        if (node.leaf) {
+            int start = lowerBound(node, key);
+            if (start == node.size || node.keys[start] != key) {
+                start--;
+            }
+            for (int i = start; i >= 0; i--) {
+                if (matches(node, i, state)) {
+                    return node.lots[i];
+                }
+            }
+            return null;
+        }
+        int i = childIndex(node, key);
+        if (matches(node, i, state)) {
+            ParkingLot lot = floor(node.children[i], key, state);
+            if (lot != null) {
+                return lot;
+            }
+        }
+        for (i--; i >= 0; i--) {
+            if (matches(node, i, state)) {
+                return last(node.children[i], state);
+            }
+        }
+        return null;
+    }
+
+    // Smallest lot of the subtree in the given state, the subtree must contain one
+    private static ParkingLot first(BTreeNode node, int state) {
+        while (true) {
+            int i = 0;
+            while (!matches(node, i, state)) {
+                i++;
+            }
+            if (node.leaf) {
+                return node.lots[i];
+            }
+            node = node.children[i];
+        }
+    }
+
+    // Largest lot of the subtree in the given state, the subtree must contain one
+    private static ParkingLot last(BTreeNode node, int state) {
+        while (true) {
+            int i = node.size - 1;
+            while (!matches(node, i, state)) {
+                i--;
+            }
+            if (node.leaf) {
+                return node.lots[i];
+            }
+            node = node.children[i];
+        }
+    }
+
+    // Applies the change of the lot's states and summed trucks to the entries on its path
+    @Override
+    public void refresh(ParkingLot lot) {
+        int key = lot.getCapacityConstraint();
+        int depth = 0;
+        BTreeNode node = root;
+        while (!node.leaf) {
+            int i = childIndex(node, key);
+            pathNodes[depth] = node;
+            pathIndexes[depth] = i;
+            depth++;
+            node = node.children[i];
+        }
+        int i = lowerBound(node, key);
+        if (i == node.size || node.lots[i] != lot) {
+            return;
+        }
+
+        int available = (lot.isFull() ? 0 : 1) - node.available[i];
+        int waiting = (lot.getWaitingQueue().isEmpty() ? 0 : 1) - node.waiting[i];
+        int ready = (lot.getReadyQueue().isEmpty() ? 0 : 1) - node.ready[i];
+        int sum = ownSum(lot) - node.sums[i];
+        if (available == 0 && waiting == 0 && ready == 0 && sum == 0) {
+            return;
+        }
+        setEntry(node, i, lot);
+        while (depth > 0) {
+            depth--;
+            BTreeNode parent = pathNodes[depth];
+            int j = pathIndexes[depth];
+            parent.available[j] += available;
+            parent.waiting[j] += waiting;
+            parent.ready[j] += ready;
+            parent.sums[j] += sum;
+            pathNodes[depth] = null;
+        }
+    }
+
+    // Total number of summed trucks in lots with a key strictly greater than the given key
+    @Override
+    public int countGreater(int key) {
+        BTreeNode node = root;
+        int total = 0;
+        while (!node.leaf) {
+            int i = childIndex(node, key);
+            for (int j = i + 1; j < node.size; j++) {
+                total += node.sums[j];
+            }
+            node = node.children[i];
+        }
+        for (int j = node.size - 1; j >= 0 && node.keys[j] > key; j--) {
+            total += node.sums[j];
+        }
+        return total;
+    }
+
+    // Total number of summed trucks in lots with lo <= key <= hi
+    @Override
+    public int countRange(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        int atLeastLo;
+        if (lo == Integer.MIN_VALUE) {
+            atLeastLo = 0;
+            for (int j = 0; j < root.size; j++) {
+                atLeastLo += root.sums[j];
+            }
+        } else {
+            atLeastLo = countGreater(lo - 1);
+        }
+        return atLeastLo - countGreater(hi);
+    }
+}
@@ -0,0 +1,92 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Runs every scenario file of a directory in one JVM, each on its own Simulator.
+// Scenarios are independent tasks on a work-stealing pool, so a few long scenarios do not leave the other
+// threads idle. The largest files are submitted first, the small ones fill the gaps at the end.
+public class Batch {
+    private final File inputDir;
+    private final File outputDir;
+    private final int threads;
+    private final boolean btree;
+    private final int universe;
+    private final double tombstoneFraction;
+
+    public Batch(String inputDirPath, String outputDirPath, int threads, boolean btree, int universe,
+                 double tombstoneFraction) {
+        this.inputDir = new File(inputDirPath);
+        this.outputDir = new File(outputDirPath);
+        this.threads = Math.max(threads, 1);
+        this.btree = btree;
+        this.universe = universe;
+        this.tombstoneFraction = tombstoneFraction;
+    }
+
+    // Returns once every scenario has run, a failing scenario is reported and does not stop the others
+    public void run() throws IOException {
+        File[] files = inputDir.listFiles(File::isFile);
+        if (files == null) {
+            throw new IOException("Not a directory: " + inputDir);
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create the output directory " + outputDir);
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::length).reversed());
+
+        ArrayList<Scenario> scenarios = new ArrayList<>(files.length);
+        for (File file : files) {
+            scenarios.add(new Scenario(file));
+        }
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(scenarios);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        int failed = 0;
+        for (Scenario scenario : scenarios) {
+            if (scenario.failure != null) {
+                System.err.println("Scenario " + scenario.input.getName() + " failed");
+                scenario.failure.printStackTrace();
+                failed++;
+            }
+        }
+        System.err.printf("%d scenarios on %d threads in %.1f ms, %d failed%n",
+                scenarios.size(), threads, (System.nanoTime() - start) / 1e6, failed);
+    }
+
+    private class Scenario extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final File input;
+        Exception failure;
+
+        Scenario(File input) {
+            this.input = input;
+        }
+
+        @Override
+        protected void compute() {
+            Simulator simulator = new Simulator(btree, universe, tombstoneFraction);
+            File output = new File(outputDir, input.getName());
+            simulator.setSnapshotPath(output.getPath() + ".snapshot");
+            try {
+                simulator.run(input.getPath(), output.getPath());
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+// Lot index for keys bounded by a universe. Lots with keys in [0, universe) are kept in an array by key,
+// with one SuccessorSet per state, so the state searches of the commands are a few word operations.
+// Lots with other keys are kept in a fallback index and searches continue into it across the universe edges.
+// The truck sums come from the fallback only, so lots inside the universe must be counted by a CapacityIndex.
+public class BitsetLotIndex implements LotIndex {
+    public static final int DEFAULT_UNIVERSE = 1 << 20;
+    private static final int INITIAL_SIZE = 1024;
+    private static final int ANY = -1;  // State matching every lot
+
+    private final int universe;
+    private final LotIndex fallback;
+    private ParkingLot[] byKey;  // Grows by doubling up to the universe
+    private int lotCount;  // Lots inside the universe
+
+    private final SuccessorSet present;  // Keys of all lots inside the universe
+    private final SuccessorSet[] states;  // Indexed by state
+
+    public BitsetLotIndex(int universe, LotIndex fallback) {
+        this.universe = universe;
+        this.fallback = fallback;
+        this.byKey = new ParkingLot[Math.min(INITIAL_SIZE, universe)];
+        this.present = new SuccessorSet(universe);
+        this.states = new SuccessorSet[] {
+                new SuccessorSet(universe), new SuccessorSet(universe), new SuccessorSet(universe)
+        };
+    }
+
+    private boolean covers(int key) {
+        return key >= 0 && key < universe;
+    }
+
+    private SuccessorSet members(int state) {
+        return (state == ANY) ? present : states[state];
+    }
+
+    // Sets the state bits of a lot inside the universe from its queues
+    private void updateStates(int key, ParkingLot lot) {
+        setBit(states[AVAILABLE], key, !lot.isFull());
+        setBit(states[WAITING], key, !lot.getWaitingQueue().isEmpty());
+        setBit(states[READY], key, !lot.getReadyQueue().isEmpty());
+    }
+
+    private static void setBit(SuccessorSet set, int key, boolean value) {
+        if (value) {
+            set.add(key);
+        } else {
+            set.remove(key);
+        }
+    }
+
+    private void grow(int key) {
+        int newSize = byKey.length;
+        while (newSize <= key) {
+            newSize *= 2;
+        }
+        ParkingLot[] newByKey = new ParkingLot[Math.min(newSize, universe)];
+        System.arraycopy(byKey, 0, newByKey, 0, byKey.length);
+        byKey = newByKey;
+    }
+
+    @Override
+    public int size() {
+        return lotCount + fallback.size();
+    }
+
+    @Override
+    public ParkingLot find(int key) {
+        if (!covers(key)) {
+            return fallback.find(key);
+        }
+        return (key < byKey.length) ? byKey[key] : null;
+    }
+
+    @Override
+    public void insert(ParkingLot lot) {
+        int key = lot.getCapacityConstraint();
+        if (!covers(key)) {
+            fallback.insert(lot);
+            return;
+        }
+        if (key >= byKey.length) {
+            grow(key);
+        }
+        if (byKey[key] != null) {
+            return;
+        }
+        byKey[key] = lot;
+        present.add(key);
+        updateStates(key, lot);
+        lotCount++;
+    }
+
+    // Lots inside the universe are set directly, the sorted runs below and above it go to the fallback
+    @Override
+    public void insertAll(ParkingLot[] lots, int count) {
+        int below = 0;
+        while (below < count && lots[below].getCapacityConstraint() < 0) {
+            below++;
+        }
+        int above = below;
+        while (above < count && lots[above].getCapacityConstraint() < universe) {
+            insert(lots[above++]);
+        }
+        if (below == 0 && above == count) {
+            return;
+        }
+        ParkingLot[] outside = new ParkingLot[below + count - above];
+        System.arraycopy(lots, 0, outside, 0, below);
+        System.arraycopy(lots, above, outside, below, count - above);
+        fallback.insertAll(outside, outside.length);
+    }
+
+    @Override
+    public ParkingLot delete(int key) {
+        if (!covers(key)) {
+            return fallback.delete(key);
+        }
+        if (key >= byKey.length || byKey[key] == null) {
+            return null;
+        }
+        ParkingLot lot = byKey[key];
+        byKey[key] = null;
+        present.remove(key);
+        for (SuccessorSet set : states) {
+            set.remove(key);
+        }
+        lotCount--;
+        return lot;
+    }
+
+    @Override
+    public ParkingLot ceiling(int key) {
+        return ceiling(key, ANY);
+    }
+
+    @Override
+    public ParkingLot floor(int key) {
+        return floor(key, ANY);
+    }
+
+    @Override
+    public ParkingLot next(ParkingLot lot) {
+        int key = lot.getCapacityConstraint();
+        return (key == Integer.MAX_VALUE) ? null : ceiling(key + 1, ANY);
+    }
+
+    // Checks the fallback's negative keys, then the universe, then the fallback's keys above the universe
+    @Override
+    public ParkingLot ceiling(int key, int state) {
+        if (key < 0) {
+            if (fallback.size() > 0) {
+                ParkingLot lot = fallbackCeiling(key, state);
+                if (lot != null && lot.getCapacityConstraint() < 0) {
+                    return lot;
+                }
+            }
+            key = 0;
+        }
+        if (key < universe) {
+            int found = members(state).next(key);
+            if (found >= 0) {
+                return byKey[found];
+            }
+            key = universe;
+        }
+        return (fallback.size() > 0) ? fallbackCeiling(key, state) : null;
+    }
+
+    @Override
+    public ParkingLot floor(int key, int state) {
+        if (key >= universe) {
+            if (fallback.size() > 0) {
+                ParkingLot lot = fallbackFloor(key, state);
+                if (lot != null && lot.getCapacityConstraint() >= universe) {
+                    return lot;
+                }
+            }
+            key = universe - 1;
+        }
+        if (key >= 0) {
+            int found = members(state).previous(key);
+            if (found >= 0) {
+                return byKey[found];
+            }
+            key = -1;
+        }
+        return (fallback.size() > 0) ? fallbackFloor(key, state) : null;
+    }
+
+    @Override
+    public ParkingLot next(ParkingLot lot, int state) {
+        int key = lot.getCapacityConstraint();
+        return (key == Integer.MAX_VALUE) ? null : ceiling(key + 1, state);
+    }
+
+    private ParkingLot fallbackCeiling(int key, int state) {
+        return (state == ANY) ? fallback.ceiling(key) : fallback.ceiling(key, state);
+    }
+
+    private ParkingLot fallbackFloor(int key, int state) {
+        return (state == ANY) ? fallback.floor(key) : fallback.floor(key, state);
+    }
+
+    @Override
+    public void refresh(ParkingLot lot) {
+        int key = lot.getCapacityConstraint();
+        if (!covers(key)) {
+            fallback.refresh(lot);
+        } else if (key < byKey.length && byKey[key] == lot) {
+            updateStates(key, lot);
+        }
+    }
+
+    @Override
+    public int countGreater(int key) {
+        return fallback.countGreater(key);
+    }
+
+    @Override
+    public int countRange(int lo, int hi) {
+        return fallback.countRange(lo, hi);
+    }
+}
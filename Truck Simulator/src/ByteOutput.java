@@ -0,0 +1,117 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+// Reusable byte buffer the command handlers write their output into.
+// Integers are formatted directly into the buffer, which is flushed to the stream when it fills up.
+public class ByteOutput implements ResultWriter, Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int position;
+    private int lineValues;  // Values written since the last line ended
+
+    public ByteOutput(OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    public ByteOutput(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(bufferSize, 16)];
+        this.position = 0;
+        this.lineValues = 0;
+    }
+
+    @Override
+    public void write(int value) {
+        if (lineValues > 0) {
+            if ((lineValues & 1) == 1) {
+                append(' ');
+            } else {
+                append(" - ");
+            }
+        }
+        append(value);
+        lineValues++;
+    }
+
+    @Override
+    public boolean isLineEmpty() {
+        return lineValues == 0;
+    }
+
+    @Override
+    public void endLine() {
+        if (lineValues > 0) {
+            append('\n');
+            lineValues = 0;
+        }
+    }
+
+    // Ends the current line even if nothing was written to it
+    public void endLineAlways() {
+        append('\n');
+        lineValues = 0;
+    }
+
+    private void append(char c) {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    // Appends an ASCII string
+    private void append(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            append(s.charAt(i));
+        }
+    }
+
+    private void append(int value) {
+        // An int has at most 11 characters
+        if (buffer.length - position < 11) {
+            flushBuffer();
+        }
+        if (value < 0) {
+            if (value == Integer.MIN_VALUE) {
+                append("-2147483648");
+                return;
+            }
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        position += digits;
+    }
+
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    private void flushBuffer() {
+        try {
+            out.write(buffer, 0, position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+}
@@ -0,0 +1,88 @@
+// Fenwick tree counting trucks per capacity constraint.
+// Keys are used directly as positions, the array grows by doubling up to maxUniverse.
+// Keys outside [0, maxUniverse) are not covered and have to be counted elsewhere.
+public class CapacityIndex {
+    public static final int DEFAULT_MAX_UNIVERSE = 1 << 22;
+    private static final int INITIAL_SIZE = 1024;
+
+    private final int maxUniverse;
+    private int[] tree;  // 1-based, tree[i] holds the count of keys in (i - lowbit(i), i]
+    private int size;  // Covered keys are [0, size), always a power of two
+    private int total;
+
+    public CapacityIndex() {
+        this(DEFAULT_MAX_UNIVERSE);
+    }
+
+    public CapacityIndex(int maxUniverse) {
+        this.maxUniverse = maxUniverse;
+        this.size = Math.min(INITIAL_SIZE, Integer.highestOneBit(Math.max(maxUniverse, 1)));
+        this.tree = new int[size + 1];
+        this.total = 0;
+    }
+
+    public int getMaxUniverse() {
+        return maxUniverse;
+    }
+
+    public boolean covers(int key) {
+        return key >= 0 && key < maxUniverse;
+    }
+
+    // Adds delta trucks to the given key, the key must be covered
+    public void add(int key, int delta) {
+        if (key >= size) {
+            grow(key);
+        }
+        total += delta;
+        for (int i = key + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    // Number of trucks with a key <= the given key
+    public int countAtMost(int key) {
+        if (key < 0) {
+            return 0;
+        }
+        if (key >= size) {
+            return total;
+        }
+        int count = 0;
+        for (int i = key + 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    // Number of trucks with a key strictly greater than the given key
+    public int countGreater(int key) {
+        return total - countAtMost(key);
+    }
+
+    // Number of trucks with lo <= key <= hi
+    public int countRange(int lo, int hi) {
+        if (lo > hi) {
+            return 0;
+        }
+        // Keys start at 0, and lo - 1 would wrap around for Integer.MIN_VALUE
+        int below = (lo <= 0) ? 0 : countAtMost(lo - 1);
+        return countAtMost(hi) - below;
+    }
+
+    // Doubling keeps the old entries valid: the new upper half starts empty
+    // and its last entry covers the whole array, so it receives the total
+    private void grow(int key) {
+        int newSize = size;
+        while (newSize <= key) {
+            newSize *= 2;
+        }
+        int[] newTree = new int[newSize + 1];
+        System.arraycopy(tree, 0, newTree, 0, size + 1);
+        for (int i = size * 2; i <= newSize; i *= 2) {
+            newTree[i] = total;
+        }
+        tree = newTree;
+        size = newSize;
+    }
+}
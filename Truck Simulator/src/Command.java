@@ -0,0 +1,77 @@
+import java.nio.ByteBuffer;
+
+// Opcodes of the simulator commands, shared by the parser and everything that passes decoded commands around
+public class Command {
+    public static final int UNKNOWN = 0;
+    public static final int CREATE_PARKING_LOT = 1;
+    public static final int DELETE_PARKING_LOT = 2;
+    public static final int ADD_TRUCK = 3;
+    public static final int READY = 4;
+    public static final int LOAD = 5;
+    public static final int COUNT = 6;
+    public static final int COUNT_RANGE = 7;
+    public static final int SNAPSHOT = 8;
+    public static final int READY_N = 9;
+
+    public static final int MAX_PARAMETERS = 2;
+
+    private static final String[] NAMES = {
+            "unknown", "create_parking_lot", "delete_parking_lot", "add_truck", "ready", "load", "count", "count_range",
+            "snapshot", "ready_n"
+    };
+    private static final int[] PARAMETER_COUNTS = {0, 2, 1, 2, 1, 2, 1, 2, 0, 2};
+    private static final byte[][] WORDS = new byte[NAMES.length][];
+
+    static {
+        for (int i = 0; i < NAMES.length; i++) {
+            WORDS[i] = NAMES[i].getBytes();
+        }
+    }
+
+    public static String name(int command) {
+        return NAMES[command];
+    }
+
+    public static int parameterCount(int command) {
+        return PARAMETER_COUNTS[command];
+    }
+
+    // Recognises the command word stored at [start, start + length) of the buffer.
+    // The candidate is picked by the word's length and leading byte, then compared in full.
+    public static int decode(ByteBuffer buffer, int start, int length) {
+        int candidate;
+        switch (length) {
+            case 4:
+                candidate = LOAD;
+                break;
+            case 5:
+                candidate = (buffer.get(start) == 'r') ? READY : COUNT;
+                break;
+            case 7:
+                candidate = READY_N;
+                break;
+            case 8:
+                candidate = SNAPSHOT;
+                break;
+            case 9:
+                candidate = ADD_TRUCK;
+                break;
+            case 11:
+                candidate = COUNT_RANGE;
+                break;
+            case 18:
+                candidate = (buffer.get(start) == 'c') ? CREATE_PARKING_LOT : DELETE_PARKING_LOT;
+                break;
+            default:
+                return UNKNOWN;
+        }
+
+        byte[] word = WORDS[candidate];
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != word[i]) {
+                return UNKNOWN;
+            }
+        }
+        return candidate;
+    }
+}
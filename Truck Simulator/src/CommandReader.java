@@ -0,0 +1,152 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Streaming command parser over a large direct buffer.
+// Commands are recognised from their bytes and integers are decoded in place, so no String is created per line.
+public class CommandReader implements Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+    public static final int BLANK = -1;  // Returned by parseLine for a line without a command word
+
+    private final FileChannel channel;
+    private ByteBuffer buffer;  // Unparsed input is between position and limit
+    private boolean endOfInput;
+
+    // The last parsed command
+    public int command;
+    public final int[] params = new int[Command.MAX_PARAMETERS];
+    public int paramCount;
+
+    public CommandReader(String inputFilePath) throws IOException {
+        this(inputFilePath, DEFAULT_BUFFER_SIZE);
+    }
+
+    public CommandReader(String inputFilePath, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(Paths.get(inputFilePath), StandardOpenOption.READ);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.buffer.flip();
+        this.endOfInput = false;
+    }
+
+    // Parses the next command line, blank lines are skipped.
+    // Returns false at the end of the input.
+    public boolean next() throws IOException {
+        while (true) {
+            int lineEnd = findLineEnd();
+            if (lineEnd < 0) {
+                return false;
+            }
+            int start = buffer.position();
+            buffer.position(lineEnd == buffer.limit() ? lineEnd : lineEnd + 1);
+            if (parseLine(start, lineEnd)) {
+                return true;
+            }
+        }
+    }
+
+    // Index of the '\n' ending the current line, or the limit for a last line without one.
+    // Refills the buffer as needed and returns -1 once the input is exhausted.
+    private int findLineEnd() throws IOException {
+        int scanned = buffer.position();
+        while (true) {
+            for (int i = scanned; i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    return i;
+                }
+            }
+            if (endOfInput) {
+                return buffer.hasRemaining() ? buffer.limit() : -1;
+            }
+            scanned = buffer.remaining();
+            fill();
+        }
+    }
+
+    // Moves the unparsed bytes to the front and reads more input after them
+    private void fill() throws IOException {
+        if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+            // A single line does not fit, grow the buffer
+            ByteBuffer grown = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+            grown.put(buffer);
+            buffer = grown;
+        } else {
+            buffer.compact();
+        }
+        if (channel.read(buffer) < 0) {
+            endOfInput = true;
+        }
+        buffer.flip();
+    }
+
+    // Returns false for blank lines, unknown commands and lines with missing or malformed parameters
+    private boolean parseLine(int start, int end) {
+        command = parseLine(buffer, start, end, params);
+        if (command == BLANK || command == Command.UNKNOWN) {
+            return false;
+        }
+        paramCount = Command.parameterCount(command);
+        return true;
+    }
+
+    // Decodes the command word and its integer parameters from [start, end) of the buffer.
+    // Returns the opcode, BLANK for a blank line, or UNKNOWN for unknown commands and lines missing parameters.
+    // A parameter that is not a decimal int, like abc, 12abc or 3000000000, makes the line UNKNOWN as well.
+    public static int parseLine(ByteBuffer buffer, int start, int end, int[] params) {
+        int i = skipSpaces(buffer, start, end);
+        int wordStart = i;
+        while (i < end && !isSpace(buffer.get(i))) {
+            i++;
+        }
+        if (i == wordStart) {
+            return BLANK;
+        }
+        int command = Command.decode(buffer, wordStart, i - wordStart);
+        if (command == Command.UNKNOWN) {
+            return Command.UNKNOWN;
+        }
+
+        int paramCount = 0;
+        i = skipSpaces(buffer, i, end);
+        while (i < end && paramCount < params.length) {
+            boolean negative = buffer.get(i) == '-';
+            if (negative) {
+                i++;
+            }
+            int digitsStart = i;
+            long value = 0;
+            byte b;
+            while (i < end && (b = buffer.get(i)) >= '0' && b <= '9') {
+                value = value * 10 + (b - '0');
+                if (value > (negative ? -(long) Integer.MIN_VALUE : Integer.MAX_VALUE)) {
+                    return Command.UNKNOWN;
+                }
+                i++;
+            }
+            if (i == digitsStart || (i < end && !isSpace(buffer.get(i)))) {
+                return Command.UNKNOWN;
+            }
+            params[paramCount++] = (int) (negative ? -value : value);
+            i = skipSpaces(buffer, i, end);
+        }
+        return (paramCount >= Command.parameterCount(command)) ? command : Command.UNKNOWN;
+    }
+
+    private static int skipSpaces(ByteBuffer buffer, int i, int end) {
+        while (i < end && isSpace(buffer.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,331 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Simulator that can be called from many threads at once.
+// Lots are striped by capacity range: stripe s holds the keys in [s * stripeWidth, (s + 1) * stripeWidth),
+// negative keys go to the first stripe and keys past the last range to the last one. Every stripe has its own
+// lock, lot index and truck store, so add_truck and ready on different stripes run in parallel.
+// Commands that change the set of lots or move trucks across stripes (create, delete and load) are rare, they
+// lock every stripe and bump the epoch. The other commands only touch the locks of the stripes they use, there is
+// no lock that every command takes.
+//
+// Every command is linearizable:
+// - ready and ready_n walk the stripes upwards and keep every lock they took until their trucks are moved,
+//   no lot between the key and the lots they take trucks from can get a waiting truck meanwhile. count and
+//   count_range hold the locks of every stripe they sum. An exclusive command needs the first of these locks,
+//   so it runs entirely before or after them.
+// - While no exclusive command runs lots never become available again, add_truck only fills them and ready does
+//   not change how many trucks a lot holds. add_truck walks the stripes downwards holding one lock at a time,
+//   a lot it saw full stays full, so the first available lot it finds is the one the sequential search returns.
+//   An exclusive command can run between two of its stripes, add_truck sees that from the epoch and starts over.
+// Multiple locks are always taken in increasing stripe order and add_truck never holds two, so nothing deadlocks.
+public class ConcurrentSimulator {
+    private final Stripe[] stripes;
+    private final int stripeWidth;
+
+    // Number of exclusive commands started, only written with every stripe locked.
+    // add_truck only reads it, so it stays in the cache of every thread between exclusive commands.
+    private volatile long epoch;
+
+    // Hands out the linearization order of the commands when it is recorded, null otherwise
+    private final AtomicLong clock;
+
+    // Reusable buffer for the trucks released from one lot during load, only used with every stripe locked
+    private int[] released = new int[16];
+
+    private static class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        final AVLTree lots = new AVLTree();
+        // Handles of the trucks queued in this stripe's lots
+        final TruckStore trucks = new TruckStore();
+    }
+
+    // With recordOrder set, execute returns the position of each command in an equivalent sequential run
+    public ConcurrentSimulator(int stripeCount, int stripeWidth, boolean recordOrder) {
+        this.stripes = new Stripe[Math.max(stripeCount, 1)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.stripeWidth = Math.max(stripeWidth, 1);
+        this.clock = recordOrder ? new AtomicLong() : null;
+    }
+
+    // Stripe numbers grow with the keys, so a key range maps to a range of stripes
+    private int stripeOf(int key) {
+        if (key < 0) {
+            return 0;
+        }
+        return Math.min(key / stripeWidth, stripes.length - 1);
+    }
+
+    // Taken inside the critical section that decides the command's result
+    private long tick() {
+        return (clock == null) ? 0 : clock.incrementAndGet();
+    }
+
+    // Runs a decoded command and writes its output line to the given writer.
+    // Returns the command's position in the linearization order, or 0 if the order is not recorded.
+    public long execute(int command, int[] params, ResultWriter output) {
+        switch (command) {
+            case Command.CREATE_PARKING_LOT:
+                return createParkingLot(params[0], params[1]);
+            case Command.DELETE_PARKING_LOT:
+                return deleteParkingLot(params[0]);
+            case Command.ADD_TRUCK:
+                return addTruck(params[0], params[1], output);
+            case Command.READY:
+                return readyN(params[0], 1, output);
+            case Command.READY_N:
+                return readyN(params[0], params[1], output);
+            case Command.LOAD:
+                return load(params[0], params[1], output);
+            case Command.COUNT:
+                return count(params[0], output);
+            case Command.COUNT_RANGE:
+                return countRange(params[0], params[1], output);
+            default:
+                // Snapshots are only taken by the sequential simulator
+                return tick();
+        }
+    }
+
+    public long createParkingLot(int capacityConstraint, int truckLimit) {
+        lockExclusive();
+        try {
+            stripes[stripeOf(capacityConstraint)].lots.insert(new ParkingLot(capacityConstraint, truckLimit));
+            return tick();
+        } finally {
+            unlockStripes(0, stripes.length - 1);
+        }
+    }
+
+    public long deleteParkingLot(int capacityConstraint) {
+        lockExclusive();
+        try {
+            Stripe stripe = stripes[stripeOf(capacityConstraint)];
+            ParkingLot lot = stripe.lots.delete(capacityConstraint);
+            if (lot != null) {
+                removeTrucks(stripe, lot.getWaitingQueue());
+                removeTrucks(stripe, lot.getReadyQueue());
+            }
+            return tick();
+        } finally {
+            unlockStripes(0, stripes.length - 1);
+        }
+    }
+
+    private static void removeTrucks(Stripe stripe, IntQueue queue) {
+        for (int i = 0; i < queue.size(); i++) {
+            stripe.trucks.remove(queue.get(i));
+        }
+    }
+
+    // Adds a truck to the largest lot that is not full and fits its capacity.
+    // Writes the ID of the parking lot, or -1 if no suitable lot is found.
+    public long addTruck(int truckId, int capacity, ResultWriter output) {
+        while (true) {
+            long start = epoch;
+            boolean changed = false;
+            for (int s = stripeOf(capacity); s >= 0 && !changed; s--) {
+                Stripe stripe = stripes[s];
+                stripe.lock.lock();
+                try {
+                    changed = epoch != start;
+                    ParkingLot lot = changed ? null : stripe.lots.floor(capacity, LotIndex.AVAILABLE);
+                    if (lot != null) {
+                        lot.getWaitingQueue().enqueue(stripe.trucks.add(truckId, capacity));
+                        stripe.lots.refresh(lot);
+                        output.write(lot.getCapacityConstraint());
+                        return tick();
+                    }
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+            if (!changed) {
+                // Every lot that fits stays full until the next exclusive command. One that starts after this
+                // check takes its position after the one handed out here.
+                long position = tick();
+                if (epoch == start) {
+                    output.write(-1);
+                    return position;
+                }
+            }
+        }
+    }
+
+    // Moves up to count trucks from waiting to ready, taking them from the smallest lots with waiting trucks
+    // at or above the given capacity. Writes the truck ID and lot ID of every moved truck, or -1 if none moved.
+    public long readyN(int capacityConstraint, int count, ResultWriter output) {
+        int first = stripeOf(capacityConstraint);
+        int s = first;
+        try {
+            while (true) {
+                Stripe stripe = stripes[s];
+                stripe.lock.lock();
+                ParkingLot lot = stripe.lots.ceiling(capacityConstraint, LotIndex.WAITING);
+                while (lot != null && count > 0) {
+                    IntQueue readyQueue = lot.getReadyQueue();
+                    int start = readyQueue.size();
+                    int moved = lot.getWaitingQueue().transferTo(readyQueue, count);
+                    for (int i = start; i < start + moved; i++) {
+                        output.write(stripe.trucks.getId(readyQueue.get(i)));
+                        output.write(lot.getCapacityConstraint());
+                    }
+                    count -= moved;
+                    stripe.lots.refresh(lot);
+                    lot = stripe.lots.next(lot, LotIndex.WAITING);
+                }
+                if (count <= 0 || s == stripes.length - 1) {
+                    break;
+                }
+                s++;
+            }
+            if (output.isLineEmpty()) {
+                output.write(-1);
+            }
+            return tick();
+        } finally {
+            for (int i = s; i >= first; i--) {
+                stripes[i].lock.unlock();
+            }
+        }
+    }
+
+    // Loads trucks of the lots with ready trucks in increasing order of capacity until the load is distributed.
+    // Writes each loaded truck with its new lot ID, or -1 if no trucks were available.
+    public long load(int capacityConstraint, int load, ResultWriter output) {
+        lockExclusive();
+        try {
+            ParkingLot current = ceiling(capacityConstraint, LotIndex.READY);
+            while (current != null && load != 0) {
+                load = loadLot(current, load, output);
+                int key = current.getCapacityConstraint();
+                current = (key == Integer.MAX_VALUE) ? null : ceiling(key + 1, LotIndex.READY);
+            }
+            if (output.isLineEmpty()) {
+                output.write(-1);
+            }
+            return tick();
+        } finally {
+            unlockStripes(0, stripes.length - 1);
+        }
+    }
+
+    // Releases the ready trucks of one lot that receive load, then places them in release order.
+    // A truck placed into another stripe moves into that stripe's truck store. Returns the remaining load.
+    private int loadLot(ParkingLot lot, int load, ResultWriter output) {
+        Stripe source = stripes[stripeOf(lot.getCapacityConstraint())];
+        IntQueue readyQueue = lot.getReadyQueue();
+        int releasedCount = 0;
+        while (load != 0 && !readyQueue.isEmpty()) {
+            int truck = readyQueue.dequeue();
+            load = source.trucks.loadTruck(truck, load, lot.getCapacityConstraint());
+            if (source.trucks.isFull(truck)) {
+                source.trucks.unloadTruck(truck);
+            }
+            if (releasedCount == released.length) {
+                int[] grown = new int[2 * releasedCount];
+                System.arraycopy(released, 0, grown, 0, releasedCount);
+                released = grown;
+            }
+            released[releasedCount++] = truck;
+        }
+        source.lots.refresh(lot);
+
+        for (int i = 0; i < releasedCount; i++) {
+            int truck = released[i];
+            output.write(source.trucks.getId(truck));
+            ParkingLot target = floor(source.trucks.getRemainingCapacity(truck), LotIndex.AVAILABLE);
+            if (target == null) {
+                output.write(-1);
+                source.trucks.remove(truck);
+                continue;
+            }
+            output.write(target.getCapacityConstraint());
+
+            Stripe destination = stripes[stripeOf(target.getCapacityConstraint())];
+            if (destination != source) {
+                int moved = destination.trucks.add(source.trucks.getId(truck), source.trucks.getCapacity(truck),
+                        source.trucks.getLoad(truck));
+                source.trucks.remove(truck);
+                truck = moved;
+            }
+            target.getWaitingQueue().enqueue(truck);
+            destination.lots.refresh(target);
+        }
+        return load;
+    }
+
+    // Searches across the stripes, only called with every stripe locked
+    private ParkingLot ceiling(int key, int state) {
+        for (int s = stripeOf(key); s < stripes.length; s++) {
+            ParkingLot lot = stripes[s].lots.ceiling(key, state);
+            if (lot != null) {
+                return lot;
+            }
+        }
+        return null;
+    }
+
+    private ParkingLot floor(int key, int state) {
+        for (int s = stripeOf(key); s >= 0; s--) {
+            ParkingLot lot = stripes[s].lots.floor(key, state);
+            if (lot != null) {
+                return lot;
+            }
+        }
+        return null;
+    }
+
+    // Writes the number of trucks in lots with a capacity constraint greater than the given one
+    public long count(int capacityConstraint, ResultWriter output) {
+        int first = stripeOf(capacityConstraint);
+        lockStripes(first, stripes.length - 1);
+        try {
+            int total = 0;
+            for (int s = first; s < stripes.length; s++) {
+                total += stripes[s].lots.countGreater(capacityConstraint);
+            }
+            output.write(total);
+            return tick();
+        } finally {
+            unlockStripes(first, stripes.length - 1);
+        }
+    }
+
+    // Writes the number of trucks in lots with a capacity constraint between lo and hi, both inclusive
+    public long countRange(int lo, int hi, ResultWriter output) {
+        int first = stripeOf(lo);
+        int last = Math.max(stripeOf(hi), first);
+        lockStripes(first, last);
+        try {
+            int total = 0;
+            for (int s = first; s <= last; s++) {
+                total += stripes[s].lots.countRange(lo, hi);
+            }
+            output.write(total);
+            return tick();
+        } finally {
+            unlockStripes(first, last);
+        }
+    }
+
+    // Waits for the commands holding any stripe and keeps new ones out until every stripe is unlocked
+    private void lockExclusive() {
+        lockStripes(0, stripes.length - 1);
+        epoch++;
+    }
+
+    private void lockStripes(int first, int last) {
+        for (int s = first; s <= last; s++) {
+            stripes[s].lock.lock();
+        }
+    }
+
+    private void unlockStripes(int first, int last) {
+        for (int s = last; s >= first; s--) {
+            stripes[s].lock.unlock();
+        }
+    }
+}
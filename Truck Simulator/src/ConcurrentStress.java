@@ -0,0 +1,232 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+// Checks the ConcurrentSimulator against the sequential Simulator and measures how add_truck and ready scale.
+// The check runs a random command mix on several threads and records every command with its output line and
+// its position in the linearization order. Replaying the commands in that order on a Simulator has to give
+// the same lines, otherwise the concurrent run was not equivalent to any sequential one.
+// Usage: java ConcurrentStress [--threads=N] [--commands=N] [--keys=N] [--stripes=N]
+// --commands is the number of commands per thread and --keys the range of lot keys
+public class ConcurrentStress {
+    private static final String USAGE =
+            "Usage: java ConcurrentStress [--threads=N] [--commands=N] [--keys=N] [--stripes=N]";
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = 4;
+        int commands = 200_000;
+        int keyRange = 1000;
+        int stripes = 64;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(value);
+            } else if (arg.startsWith("--commands=")) {
+                commands = Integer.parseInt(value);
+            } else if (arg.startsWith("--keys=")) {
+                keyRange = Integer.parseInt(value);
+            } else if (arg.startsWith("--stripes=")) {
+                stripes = Integer.parseInt(value);
+            } else {
+                System.err.println("Unknown option " + arg);
+                System.err.println(USAGE);
+                return;
+            }
+        }
+        int stripeWidth = (keyRange + stripes - 1) / stripes;
+
+        boolean consistent = check(threads, commands, keyRange, stripes, stripeWidth);
+        for (int t = 1; t <= threads; t *= 2) {
+            measure(t, commands, keyRange, stripes, stripeWidth);
+        }
+        if (!consistent) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean check(int threads, int commands, int keyRange, int stripes, int stripeWidth)
+            throws InterruptedException {
+        ConcurrentSimulator simulator = new ConcurrentSimulator(stripes, stripeWidth, true);
+        Worker setup = new Worker(simulator, -1, keyRange / 2, keyRange, true);
+        for (int i = 0; i < setup.records; i++) {
+            // A few lots below 0 take the trucks that fit nowhere else, the full range count_range has to see them
+            int key = (i % 16 == 0) ? -1 - setup.random.nextInt(keyRange) : setup.random.nextInt(keyRange);
+            setup.run(i, Command.CREATE_PARKING_LOT, key, 1 + setup.random.nextInt(8));
+        }
+
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(simulator, i, commands, keyRange, true);
+        }
+        runAll(workers);
+
+        // Merge the records of every thread in linearization order
+        int total = setup.records + threads * commands;
+        long[] order = new long[total];
+        int n = 0;
+        for (int i = 0; i < setup.records; i++) {
+            order[n++] = setup.tickets[i] << 24 | 0xFFFFFF;
+        }
+        for (int w = 0; w < threads; w++) {
+            for (int i = 0; i < commands; i++) {
+                order[n++] = workers[w].tickets[i] << 24 | w;
+            }
+        }
+        Arrays.sort(order);
+        int[] next = new int[threads];
+        int setupNext = 0;
+
+        Simulator sequential = new Simulator(false, BitsetLotIndex.DEFAULT_UNIVERSE);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteOutput output = new ByteOutput(bytes);
+        sequential.setOutput(output);
+        int[] params = new int[Command.MAX_PARAMETERS];
+        int mismatches = 0;
+        for (int k = 0; k < total; k++) {
+            if (k > 0 && order[k] >>> 24 == order[k - 1] >>> 24) {
+                System.out.println("Linearization position " + (order[k] >>> 24) + " handed out twice");
+                return false;
+            }
+            int w = (int) (order[k] & 0xFFFFFF);
+            Worker worker = (w == 0xFFFFFF) ? setup : workers[w];
+            int i = (w == 0xFFFFFF) ? setupNext++ : next[w]++;
+            params[0] = worker.params[2 * i];
+            params[1] = worker.params[2 * i + 1];
+            sequential.execute(worker.commands[i], params);
+            sequential.flushCreates();
+            output.endLineAlways();
+            try {
+                output.flush();
+            } catch (IOException e) {
+                // Writing to the in-memory stream cannot fail
+            }
+            String expected = bytes.toString();
+            bytes.reset();
+            if (!expected.equals(worker.lines[i])) {
+                if (mismatches++ < 10) {
+                    System.out.printf("%s %d %d: expected %s, got %s%n", Command.name(worker.commands[i]),
+                            params[0], params[1], expected.trim(), worker.lines[i].trim());
+                }
+            }
+        }
+        System.out.printf("%d commands on %d threads, %d differ from the sequential replay%n",
+                total, threads, mismatches);
+        return mismatches == 0;
+    }
+
+    // add_truck and ready throughput with the order not recorded and the output discarded
+    private static void measure(int threads, int commands, int keyRange, int stripes, int stripeWidth)
+            throws InterruptedException {
+        ConcurrentSimulator simulator = new ConcurrentSimulator(stripes, stripeWidth, false);
+        for (int key = 0; key < keyRange; key++) {
+            simulator.createParkingLot(key, 1 << 20);
+        }
+        Worker[] workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(simulator, i, commands, keyRange, false);
+        }
+        long start = System.nanoTime();
+        runAll(workers);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%d threads: %.0f add_truck/ready per second%n",
+                threads, (double) threads * commands * 1e9 / elapsed);
+    }
+
+    private static void runAll(Worker[] workers) throws InterruptedException {
+        Thread[] threads = new Thread[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            threads[i] = new Thread(workers[i], "stress-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    private static class Worker implements Runnable {
+        final ConcurrentSimulator simulator;
+        final int index;
+        final int records;
+        final int keyRange;
+        final boolean mixed;  // Every kind of command, otherwise only add_truck and ready
+        final Random random;
+
+        final long[] tickets;
+        final int[] commands;
+        final int[] params;
+        final String[] lines;
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final ByteOutput output;
+        private final int[] commandParams = new int[Command.MAX_PARAMETERS];
+
+        Worker(ConcurrentSimulator simulator, int index, int records, int keyRange, boolean mixed) {
+            this.simulator = simulator;
+            this.index = index;
+            this.records = records;
+            this.keyRange = keyRange;
+            this.mixed = mixed;
+            this.random = new Random(index);
+            this.tickets = new long[records];
+            this.commands = new int[records];
+            this.params = new int[2 * records];
+            this.lines = mixed ? new String[records] : null;
+            this.output = new ByteOutput(mixed ? bytes : OutputStream.nullOutputStream());
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < records; i++) {
+                int key = random.nextInt(keyRange);
+                int kind = random.nextInt(100);
+                if (!mixed) {
+                    run(i, (kind < 60) ? Command.ADD_TRUCK : Command.READY, (kind < 60) ? truckId(i) : key, key);
+                } else if (kind < 3) {
+                    run(i, Command.CREATE_PARKING_LOT, key, 1 + random.nextInt(8));
+                } else if (kind < 4) {
+                    run(i, Command.DELETE_PARKING_LOT, key, 0);
+                } else if (kind < 54) {
+                    run(i, Command.ADD_TRUCK, truckId(i), key);
+                } else if (kind < 84) {
+                    run(i, Command.READY, key, 0);
+                } else if (kind < 88) {
+                    run(i, Command.READY_N, key, 1 + random.nextInt(4));
+                } else if (kind < 92) {
+                    run(i, Command.LOAD, key, 1 + random.nextInt(4 * keyRange));
+                } else if (kind < 97) {
+                    run(i, Command.COUNT, key, 0);
+                } else if (kind < 99) {
+                    run(i, Command.COUNT_RANGE, key, key + random.nextInt(keyRange / 4 + 1));
+                } else {
+                    run(i, Command.COUNT_RANGE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                }
+            }
+        }
+
+        // Truck ids are unique across the workers
+        private int truckId(int i) {
+            return index * records + i;
+        }
+
+        void run(int i, int command, int first, int second) {
+            commandParams[0] = first;
+            commandParams[1] = second;
+            tickets[i] = simulator.execute(command, commandParams, output);
+            commands[i] = command;
+            params[2 * i] = first;
+            params[2 * i + 1] = second;
+            output.endLineAlways();
+            if (mixed) {
+                try {
+                    output.flush();
+                } catch (IOException e) {
+                    // Writing to the in-memory stream cannot fail
+                }
+                lines[i] = bytes.toString();
+                bytes.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+// Collects a run of consecutive create_parking_lot commands so the lots can be added to the index in one batch.
+// The first create of a key within the run wins, like it would when the creates run one by one.
+public class CreateBuffer {
+    private int[] keys = new int[16];
+    private int[] limits = new int[16];
+    private int size;
+
+    private long[] order = new long[16];  // Key in the high half, arrival index in the low half
+    private long[] scratch = new long[16];
+    private ParkingLot[] lots = new ParkingLot[16];
+
+    public void add(int capacityConstraint, int truckLimit) {
+        if (size == keys.length) {
+            keys = grow(keys);
+            limits = grow(limits);
+        }
+        keys[size] = capacityConstraint;
+        limits[size] = truckLimit;
+        size++;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Sorts and deduplicates the buffered lots and adds them to the index
+    public void flush(LotIndex lotIndex) {
+        if (size == 0) {
+            return;
+        }
+        if (order.length < size) {
+            order = new long[keys.length];
+            scratch = new long[keys.length];
+            lots = new ParkingLot[keys.length];
+        }
+        for (int i = 0; i < size; i++) {
+            order[i] = (long) keys[i] << 32 | i;
+        }
+        sort(order, scratch, size);
+
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int index = (int) order[i];
+            if (count > 0 && lots[count - 1].getCapacityConstraint() == keys[index]) {
+                continue;
+            }
+            lots[count++] = new ParkingLot(keys[index], limits[index]);
+        }
+        lotIndex.insertAll(lots, count);
+
+        for (int i = 0; i < count; i++) {
+            lots[i] = null;
+        }
+        size = 0;
+    }
+
+    // Bottom-up merge sort of values[0..n)
+    private static void sort(long[] values, long[] scratch, int n) {
+        long[] from = values;
+        long[] to = scratch;
+        for (int width = 1; width < n; width *= 2) {
+            for (int lo = 0; lo < n; lo += 2 * width) {
+                int mid = Math.min(lo + width, n);
+                int hi = Math.min(lo + 2 * width, n);
+                int i = lo;
+                int j = mid;
+                for (int k = lo; k < hi; k++) {
+                    to[k] = (j >= hi || (i < mid && from[i] <= from[j])) ? from[i++] : from[j++];
+                }
+            }
+            long[] temp = from;
+            from = to;
+            to = temp;
+        }
+        if (from != values) {
+            System.arraycopy(from, 0, values, 0, n);
+        }
+    }
+
+    private static int[] grow(int[] array) {
+        int[] grown = new int[array.length * 2];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
@@ -0,0 +1,93 @@
+// Growable FIFO ring buffer of ints, used to queue truck handles without allocating per element
+public class IntQueue {
+    private static final int DEFAULT_CAPACITY = 4;
+
+    private int[] elements;  // Length is always a power of two
+    private int front;
+    private int size;
+
+    public IntQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntQueue(int capacity) {
+        this.elements = new int[Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1)];
+        this.front = 0;
+        this.size = 0;
+    }
+
+    public void enqueue(int element) {
+        if (size == elements.length) {
+            grow(size + 1);
+        }
+        elements[(front + size) & (elements.length - 1)] = element;
+        size++;
+    }
+
+    // Removes and returns the front element, the queue must not be empty
+    public int dequeue() {
+        int element = elements[front];
+        front = (front + 1) & (elements.length - 1);
+        size--;
+        return element;
+    }
+
+    // Removes up to count elements from the front into target[offset...], returns how many were removed.
+    // The elements are copied in at most two blocks.
+    public int dequeue(int[] target, int offset, int count) {
+        count = Math.min(count, size);
+        int firstPart = Math.min(count, elements.length - front);
+        System.arraycopy(elements, front, target, offset, firstPart);
+        System.arraycopy(elements, 0, target, offset + firstPart, count - firstPart);
+        front = (front + count) & (elements.length - 1);
+        size -= count;
+        return count;
+    }
+
+    // Moves up to count elements from the front of this queue to the back of the other one, keeping their order.
+    // Returns how many were moved. Both queues are rings, so the run is copied in at most three blocks
+    // instead of being relinked, which keeps every element in one flat array.
+    public int transferTo(IntQueue other, int count) {
+        count = Math.min(count, size);
+        if (other.size + count > other.elements.length) {
+            other.grow(other.size + count);
+        }
+        int moved = 0;
+        while (moved < count) {
+            int back = (other.front + other.size) & (other.elements.length - 1);
+            int run = Math.min(count - moved, Math.min(elements.length - front, other.elements.length - back));
+            System.arraycopy(elements, front, other.elements, back, run);
+            front = (front + run) & (elements.length - 1);
+            size -= run;
+            other.size += run;
+            moved += run;
+        }
+        return count;
+    }
+
+    // Returns the element at the given position counted from the front
+    public int get(int index) {
+        return elements[(front + index) & (elements.length - 1)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = elements.length * 2;
+        while (capacity < minCapacity) {
+            capacity *= 2;
+        }
+        int[] grown = new int[capacity];
+        int firstPart = Math.min(size, elements.length - front);
+        System.arraycopy(elements, front, grown, 0, firstPart);
+        System.arraycopy(elements, 0, grown, firstPart, size - firstPart);
+        elements = grown;
+        front = 0;
+    }
+}
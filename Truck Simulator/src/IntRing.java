@@ -0,0 +1,78 @@
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded lock-free ring of ints for exactly one producer and one consumer thread.
+// Each side keeps a private index and makes its progress visible with a volatile store once per batch,
+// so passing a value costs a plain array access in the common case.
+public class IntRing {
+    private static final int BATCH = 64;
+
+    private final int[] elements;
+    private final int mask;
+
+    private volatile long head;  // Next index the consumer reads, everything before it may be overwritten
+    private volatile long tail;  // Everything before it has been published by the producer
+
+    // Producer side
+    private long writeIndex;
+    private long cachedHead;
+
+    // Consumer side
+    private long readIndex;
+    private long cachedTail;
+
+    // The capacity is rounded up to a power of two
+    public IntRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2 * BATCH) * 2 - 1);
+        this.elements = new int[size];
+        this.mask = size - 1;
+    }
+
+    // Appends a value, waiting while the ring is full
+    public void write(int value) {
+        if (writeIndex - cachedHead == elements.length) {
+            publish();
+            int idleCount = 0;
+            while (writeIndex - (cachedHead = head) == elements.length) {
+                idle(idleCount++);
+            }
+        }
+        elements[(int) writeIndex & mask] = value;
+        writeIndex++;
+        if ((writeIndex & (BATCH - 1)) == 0) {
+            tail = writeIndex;
+        }
+    }
+
+    // Makes every value written so far visible to the consumer
+    public void publish() {
+        tail = writeIndex;
+    }
+
+    // Removes the next value, waiting until one is published
+    public int read() {
+        if (readIndex == cachedTail) {
+            head = readIndex;
+            int idleCount = 0;
+            while ((cachedTail = tail) == readIndex) {
+                idle(idleCount++);
+            }
+        }
+        int value = elements[(int) readIndex & mask];
+        readIndex++;
+        if ((readIndex & (BATCH - 1)) == 0) {
+            head = readIndex;
+        }
+        return value;
+    }
+
+    // Spins first, then backs off so an idle side does not burn a core
+    static void idle(int idleCount) {
+        if (idleCount < 100) {
+            Thread.onSpinWait();
+        } else if (idleCount < 1000) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Append-only journal of the commands applied to the simulator.
+// Header: MAGIC, then the sequence of the first record as a long. A record is the opcode byte
+// followed by its parameters as zigzag varints. Records are collected in a buffer and written in groups:
+// when the buffer fills, and at the end of every group of commands whose results are about to be handed out
+// (commit). The file is forced to the disk every syncInterval commands, and a commit also forces it once
+// syncMillis have passed since the last force, so no command waits long for its group commit.
+// The methods are synchronized, a shutdown hook may close the journal while another thread appends to it.
+// The journal keeps a snapshot next to it at <path>.snapshot, recovery restores it and replays the records
+// after its sequence. Compaction replaces that snapshot with the current state and empties the journal.
+public class Journal implements Closeable {
+    private static final int MAGIC = 0x54534A31;  // "TSJ1"
+    private static final int HEADER_BYTES = 12;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_RECORD_BYTES = 1 + 5 * Command.MAX_PARAMETERS;
+
+    public static final int DEFAULT_SYNC_INTERVAL = 16384;
+    public static final int DEFAULT_SYNC_MILLIS = 10;
+    public static final int DEFAULT_COMPACT_INTERVAL = 1 << 22;
+
+    private final Simulator simulator;
+    private final Path path;
+    private final Path snapshotPath;
+    private final int syncInterval;  // Commands between two fsyncs, 0 leaves flushing to the operating system
+    private final long syncNanos;  // Longest time a committed record waits for its fsync, 0 for no bound
+    private final int compactInterval;  // Commands between two compactions, 0 never compacts
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private long sequence;  // Number of commands the state includes
+    private int unsynced;
+    private long lastSync = System.nanoTime();
+    private int sinceCompaction;
+    private boolean closed;
+
+    private Journal(Simulator simulator, Path path, int syncInterval, int syncMillis, int compactInterval,
+                    FileChannel channel, long sequence) {
+        this.simulator = simulator;
+        this.path = path;
+        this.snapshotPath = Paths.get(path + ".snapshot");
+        this.syncInterval = syncInterval;
+        this.syncNanos = syncMillis * 1_000_000L;
+        this.compactInterval = compactInterval;
+        this.channel = channel;
+        this.sequence = sequence;
+    }
+
+    // Opens the journal at the given path and brings the simulator back to the state it recorded:
+    // the snapshot is restored if there is one, then the records after it are run through the simulator
+    // with their output discarded. A record cut off by a crash is dropped.
+    public static Journal open(String path, int syncInterval, int syncMillis, int compactInterval, Simulator simulator)
+            throws IOException {
+        Path journalPath = Paths.get(path);
+        Path snapshotPath = Paths.get(path + ".snapshot");
+        long sequence = 0;
+        if (Files.exists(snapshotPath)) {
+            sequence = simulator.restore(snapshotPath.toString());
+        }
+
+        FileChannel channel = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Journal journal = new Journal(simulator, journalPath, syncInterval, syncMillis, compactInterval, channel,
+                sequence);
+        if (channel.size() < HEADER_BYTES) {
+            journal.reset();
+        } else {
+            journal.replay();
+        }
+        return journal;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    private void replay() throws IOException {
+        MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (data.getInt() != MAGIC) {
+            throw new IOException("Not a journal file: " + path);
+        }
+        long recordSequence = data.getLong();
+        if (recordSequence > sequence) {
+            throw new IOException("Journal starts at command " + recordSequence
+                    + " but the state only includes " + sequence);
+        }
+
+        ResultWriter previous = simulator.getOutput();
+        ResultWriter discarded = new ByteOutput(OutputStream.nullOutputStream());
+        simulator.setOutput(discarded);
+        int[] params = new int[Command.MAX_PARAMETERS];
+        int validEnd = data.position();
+        try {
+            while (data.hasRemaining()) {
+                int command = data.get();
+                if (command <= Command.UNKNOWN || command > Command.READY_N) {
+                    break;
+                }
+                int count = Command.parameterCount(command);
+                int i = 0;
+                while (i < count && readVarint(data, params, i)) {
+                    i++;
+                }
+                if (i < count) {
+                    break;
+                }
+                validEnd = data.position();
+                // Records already covered by the snapshot are skipped
+                if (recordSequence++ >= sequence) {
+                    simulator.execute(command, params);
+                    discarded.endLine();
+                    sequence++;
+                }
+            }
+            simulator.flushCreates();
+        } finally {
+            simulator.setOutput(previous);
+        }
+
+        channel.truncate(validEnd);
+        channel.position(validEnd);
+    }
+
+    // Decodes a zigzag varint into params[index], returns false if the data ends inside it
+    private static boolean readVarint(ByteBuffer data, int[] params, int index) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (!data.hasRemaining()) {
+                return false;
+            }
+            int b = data.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                params[index] = (value >>> 1) ^ -(value & 1);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeVarint(int value) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            buffer.put((byte) (zigzag & 0x7F | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+
+    // Records a command that is about to be applied, fails once the journal is closed
+    public synchronized void append(int command, int[] params) throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed: " + path);
+        }
+        if (buffer.remaining() < MAX_RECORD_BYTES) {
+            writeBuffer();
+        }
+        buffer.put((byte) command);
+        for (int i = 0; i < Command.parameterCount(command); i++) {
+            writeVarint(params[i]);
+        }
+        sequence++;
+        sinceCompaction++;
+        if (syncInterval > 0 && ++unsynced >= syncInterval) {
+            sync();
+        }
+    }
+
+    // Whether enough commands were journaled since the last compaction
+    public synchronized boolean isCompactionDue() {
+        return compactInterval > 0 && sinceCompaction >= compactInterval;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // Ends a group of commands before their results are handed out: the buffered records are written to the file,
+    // and forced to the disk as well once syncMillis have passed since the last force. With syncInterval 0 the
+    // operating system still sees every record before its result leaves.
+    public synchronized void commit() throws IOException {
+        if (closed) {
+            return;
+        }
+        writeBuffer();
+        if (syncInterval > 0 && unsynced > 0 && System.nanoTime() - lastSync >= syncNanos) {
+            sync();
+        }
+    }
+
+    // Writes the buffered records and forces them to the disk
+    public synchronized void sync() throws IOException {
+        if (closed) {
+            return;
+        }
+        writeBuffer();
+        channel.force(false);
+        unsynced = 0;
+        lastSync = System.nanoTime();
+    }
+
+    // Forces the records that are not on the disk yet, for when no more commands are coming for a while
+    public synchronized void syncPending() throws IOException {
+        if (syncInterval > 0 && unsynced > 0) {
+            sync();
+        }
+    }
+
+    // Saves the current state as the new snapshot and empties the journal.
+    // The snapshot is written to a temporary file and moved over the old one, and the journal is only
+    // emptied after that, so a crash in between leaves records that recovery skips by their sequence.
+    public synchronized void compact(LotIndex lots, TruckStore trucks) throws IOException {
+        sync();
+        Path temporary = Paths.get(snapshotPath + ".tmp");
+        Snapshot.save(temporary.toString(), lots, trucks, sequence);
+        Files.move(temporary, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        reset();
+        sinceCompaction = 0;
+    }
+
+    // Truncates the journal to a header whose first record follows the current state
+    private void reset() throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putLong(sequence).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, HEADER_BYTES - header.remaining());
+        }
+        channel.position(HEADER_BYTES);
+        channel.force(false);
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Can be called more than once, the shutdown hook and the end of a run both close the journal
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        sync();
+        closed = true;
+        channel.close();
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+// Drives a simulator started with --serve over loopback connections and reports throughput and latency.
+// Every connection keeps up to the pipeline depth of requests in flight and times each one from the write
+// of its batch until its reply line arrives.
+// Usage: java LoadGenerator [--port=N] [--connections=N] [--requests=N] [--depth=N]
+// --requests is the number of requests per connection and --depth the pipeline depth
+public class LoadGenerator {
+    private static final int KEY_RANGE = 10_000;
+    private static final String USAGE =
+            "Usage: java LoadGenerator [--port=N] [--connections=N] [--requests=N] [--depth=N]";
+
+    public static void main(String[] args) throws InterruptedException {
+        int port = 7070;
+        int connections = 8;
+        int requests = 100_000;
+        int depth = 32;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(value);
+            } else if (arg.startsWith("--connections=")) {
+                connections = Integer.parseInt(value);
+            } else if (arg.startsWith("--requests=")) {
+                requests = Integer.parseInt(value);
+            } else if (arg.startsWith("--depth=")) {
+                depth = Integer.parseInt(value);
+            } else {
+                System.err.println("Unknown option " + arg);
+                System.err.println(USAGE);
+                return;
+            }
+        }
+
+        Client[] clients = new Client[connections];
+        Thread[] threads = new Thread[connections];
+        for (int i = 0; i < connections; i++) {
+            clients[i] = new Client(port, i, requests, depth);
+            threads[i] = new Thread(clients[i], "client-" + i);
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        LogHistogram latencies = new LogHistogram();
+        for (Client client : clients) {
+            if (client.failure != null) {
+                client.failure.printStackTrace();
+            }
+            latencies.add(client.latencies);
+        }
+        long total = latencies.getCount();
+        System.out.printf("%d requests over %d connections, pipeline depth %d%n", total, connections, depth);
+        System.out.printf("throughput %.0f requests/s%n", total * 1e9 / elapsed);
+        System.out.printf("latency us: p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                latencies.quantile(0.5) / 1e3, latencies.quantile(0.99) / 1e3,
+                latencies.quantile(0.999) / 1e3, latencies.quantile(1.0) / 1e3);
+    }
+
+    private static class Client implements Runnable {
+        private final int port;
+        private final int index;
+        private final int requests;
+        private final int depth;
+        private final Random random;
+        final LogHistogram latencies = new LogHistogram();
+        IOException failure;
+
+        Client(int port, int index, int requests, int depth) {
+            this.port = port;
+            this.index = index;
+            this.requests = requests;
+            this.depth = Math.max(depth, 1);
+            this.random = new Random(index);
+        }
+
+        @Override
+        public void run() {
+            long[] sentAt = new long[depth];  // Send time of each request in flight, by sequence number modulo depth
+            ByteBuffer out = ByteBuffer.allocate(depth * 48);
+            ByteBuffer in = ByteBuffer.allocate(1 << 16);
+            try (SocketChannel channel = SocketChannel.open(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), port))) {
+                channel.socket().setTcpNoDelay(true);
+                int sent = 0;
+                int received = 0;
+                while (received < requests) {
+                    // Top the pipeline up and send the new requests in one write
+                    int batchStart = sent;
+                    while (sent < requests && sent - received < depth) {
+                        out.put(nextRequest(sent).getBytes(StandardCharsets.US_ASCII));
+                        sent++;
+                    }
+                    if (sent > batchStart) {
+                        long now = System.nanoTime();
+                        for (int i = batchStart; i < sent; i++) {
+                            sentAt[i % depth] = now;
+                        }
+                        out.flip();
+                        while (out.hasRemaining()) {
+                            channel.write(out);
+                        }
+                        out.clear();
+                    }
+
+                    in.clear();
+                    if (channel.read(in) < 0) {
+                        throw new IOException("Server closed the connection");
+                    }
+                    long now = System.nanoTime();
+                    for (int i = 0; i < in.position(); i++) {
+                        if (in.get(i) == '\n') {
+                            latencies.record(now - sentAt[received % depth]);
+                            received++;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        // Mix of commands with every kind of reply, truck ids are unique across clients
+        private String nextRequest(int sequence) {
+            int key = random.nextInt(KEY_RANGE);
+            int kind = random.nextInt(100);
+            if (kind < 5) {
+                return "create_parking_lot " + key + " " + (1 + random.nextInt(50)) + "\n";
+            } else if (kind < 45) {
+                return "add_truck " + (index * requests + sequence) + " " + key + "\n";
+            } else if (kind < 70) {
+                return "ready " + key + "\n";
+            } else if (kind < 90) {
+                return "load " + key + " " + (1 + random.nextInt(KEY_RANGE)) + "\n";
+            } else {
+                return "count " + key + "\n";
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+// Histogram of non-negative longs with one bucket per power of two.
+// Bucket b counts values whose highest set bit is bit b - 1, bucket 0 counts zeros.
+// Recording is a few arithmetic operations on preallocated arrays, nothing is allocated per sample.
+public class LogHistogram {
+    private static final int BUCKETS = 65;
+
+    private final long[] buckets = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    public void record(long value) {
+        buckets[64 - Long.numberOfLeadingZeros(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    // Adds the samples of another histogram to this one
+    public void add(LogHistogram other) {
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets[b] += other.buckets[b];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // Upper bound of the bucket holding the value at the given quantile
+    public long quantile(double q) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(q * count);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += buckets[b];
+            if (seen >= rank) {
+                return (b == 0) ? 0 : Math.min(max, (b == 64) ? Long.MAX_VALUE : (1L << b) - 1);
+            }
+        }
+        return max;
+    }
+
+    public void appendJson(StringBuilder json) {
+        json.append("{\"count\":").append(count)
+                .append(",\"mean\":").append((count == 0) ? 0 : sum / count)
+                .append(",\"p50\":").append(quantile(0.5))
+                .append(",\"p90\":").append(quantile(0.9))
+                .append(",\"p99\":").append(quantile(0.99))
+                .append(",\"max\":").append(max)
+                .append(",\"buckets\":[");
+        int last = BUCKETS - 1;
+        while (last > 0 && buckets[last] == 0) {
+            last--;
+        }
+        for (int b = 0; b <= last; b++) {
+            if (b > 0) {
+                json.append(',');
+            }
+            json.append(buckets[b]);
+        }
+        json.append("]}");
+    }
+}
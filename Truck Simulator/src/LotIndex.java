@@ -0,0 +1,51 @@
+// Ordered index over the parking lots keyed by capacity constraint.
+// Besides the usual navigation it tracks which lots are in each state, so the lots the commands look for
+// are found in one search, and it sums the trucks of lots that are not counted by a CapacityIndex.
+public interface LotIndex {
+    // Lot states tracked by the index
+    int AVAILABLE = 0;  // Lot is not full
+    int WAITING = 1;  // Lot has trucks in its waiting queue
+    int READY = 2;  // Lot has trucks in its ready queue
+
+    int size();
+
+    // Returns the lot with the given key, or null
+    ParkingLot find(int key);
+
+    // Adds the lot unless a lot with the same key exists
+    void insert(ParkingLot lot);
+
+    // Adds lots sorted by strictly increasing key, keys already in the index are skipped
+    void insertAll(ParkingLot[] lots, int count);
+
+    // Removes and returns the lot with the given key, or returns null
+    ParkingLot delete(int key);
+
+    // Lot with the smallest key >= key, or null
+    ParkingLot ceiling(int key);
+
+    // Lot with the largest key <= key, or null
+    ParkingLot floor(int key);
+
+    // Lot following the given one in key order, or null
+    ParkingLot next(ParkingLot lot);
+
+    // Lot with the smallest key >= key in the given state, or null
+    ParkingLot ceiling(int key, int state);
+
+    // Lot with the largest key <= key in the given state, or null
+    ParkingLot floor(int key, int state);
+
+    // Lot following the given one in the given state, or null.
+    // The given lot stays a valid cursor while lot states change.
+    ParkingLot next(ParkingLot lot, int state);
+
+    // Must be called after the queues of a lot changed
+    void refresh(ParkingLot lot);
+
+    // Summed trucks in lots with a key strictly greater than the given key
+    int countGreater(int key);
+
+    // Summed trucks in lots with lo <= key <= hi
+    int countRange(int lo, int hi);
+}
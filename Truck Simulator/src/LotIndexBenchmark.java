@@ -0,0 +1,72 @@
+import java.util.Random;
+
+// Compares the lot index implementations on the operations the simulator uses most.
+// Usage: java LotIndexBenchmark [lot counts...], defaults to 100000 and 1000000 lots
+public class LotIndexBenchmark {
+    private static final int OPERATIONS = 2_000_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int[] lotCounts = {100_000, 1_000_000};
+        if (args.length > 0) {
+            lotCounts = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                lotCounts[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            for (int lotCount : lotCounts) {
+                System.out.println("round " + round + ", " + lotCount + " lots");
+                run("avl", new AVLTree(), lotCount);
+                run("btree", new BTreeLotIndex(), lotCount);
+            }
+        }
+    }
+
+    private static void run(String name, LotIndex index, int lotCount) {
+        Random random = new Random(42);
+        int keyRange = 4 * lotCount;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < lotCount; i++) {
+            index.insert(new ParkingLot(random.nextInt(keyRange), 1 + random.nextInt(4)));
+        }
+        long inserted = System.nanoTime();
+
+        // Mirrors add_truck followed by ready: a floor search over available lots, then a ceiling search
+        // over waiting lots, each followed by a refresh of the changed lot
+        long checksum = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            int key = random.nextInt(keyRange);
+            ParkingLot lot = index.floor(key, LotIndex.AVAILABLE);
+            if (lot != null) {
+                lot.getWaitingQueue().enqueue(i);
+                index.refresh(lot);
+                checksum += lot.getCapacityConstraint();
+            }
+            lot = index.ceiling(random.nextInt(keyRange), LotIndex.WAITING);
+            if (lot != null) {
+                lot.getWaitingQueue().dequeue();
+                index.refresh(lot);
+                checksum += lot.getCapacityConstraint();
+            }
+        }
+        long searched = System.nanoTime();
+
+        // Walks all lots in order the way load walks ready lots
+        for (ParkingLot lot = index.ceiling(0); lot != null; lot = index.next(lot)) {
+            checksum += lot.getTruckLimit();
+        }
+        long walked = System.nanoTime();
+
+        for (int i = 0; i < lotCount; i++) {
+            index.delete(random.nextInt(keyRange));
+        }
+        long deleted = System.nanoTime();
+
+        System.out.printf("  %-6s insert %5d ms, search+refresh %5d ms, walk %4d ms, delete %5d ms (checksum %d)%n",
+                name, (inserted - start) / 1_000_000, (searched - inserted) / 1_000_000,
+                (walked - searched) / 1_000_000, (deleted - walked) / 1_000_000, checksum);
+    }
+}
@@ -1,358 +1,162 @@
 import java.io.*;
-import java.util.ArrayList;
 
 public class Main {
-    // AVL trees for managing parking lot states
-    public static AVLTree allParkingLots = new AVLTree();  // Holds all parking lots
-    public static AVLTree availableParkingLots = new AVLTree();  // Holds only available parking lots
-    public static AVLTree waitingParkingLots = new AVLTree();  // Holds parking lots with trucks in waiting queue
-    public static AVLTree readyParkingLots = new AVLTree();  // Holds parking lots with trucks in ready queue
-
+    // Usage: java Main [--pipelined] [--index=avl|btree] [--universe=N] [--lazy-delete=F]
+    //                 [--snapshot-file=path] [--restore=path]
+    //                 [--journal=path] [--fsync-interval=N] [--fsync-millis=N] [--compact-interval=N]
+    //                 <input_file> <output_file>
+    //        java Main [options] --serve=port [--io-threads=N]
+    //        java Main [--index=avl|btree] [--universe=N] [--lazy-delete=F] [--threads=N]
+    //                 --batch=<input_dir> <output_dir>
+    // --pipelined parses, simulates and writes output on three separate threads
+    // --index picks the lot index implementation, the AVL tree is the default
+    // --universe sets the key range kept in bitsets in front of that index, 0 turns the bitsets off
+    // --lazy-delete marks deleted lots dead in the AVL tree and rebuilds it once more than the fraction F
+    //     of its nodes are dead, it only covers the lots outside the bitsets
+    // --snapshot-file is where the snapshot command saves the state, <output_file>.snapshot by default
+    // --restore loads a snapshot before the first command runs
+    // --journal recovers the state recorded in the journal and appends every applied command to it,
+    //     forcing it to the disk every --fsync-interval commands and compacting it every --compact-interval commands.
+    //     The server writes the records of every batch before sending its replies, forces them once --fsync-millis
+    //     have passed since the last force and whenever it goes idle. The journal is closed on shutdown.
+    // --serve answers the same commands over TCP on the loopback interface instead of reading a file
+    // --batch runs every file of the input directory as an independent scenario on --threads threads,
+    //     each one's output goes to a file of the same name in the output directory
     public static void main(String[] args) {
-        String inputFilePath = args[0];
-        String outputFilePath = args[1];
-
-        try (
-                BufferedReader reader = new BufferedReader(new FileReader(inputFilePath));
-                BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath))
-        ) {
-            String result = null;
-            String line = null;
-
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.trim().split(" ");
-                String command = parts[0];
-                ArrayList<Integer> params = new ArrayList<>();
-                result = "";
-
-                for (int i = 1; i < parts.length; i++) {
-                    params.add(Integer.parseInt(parts[i]));
-                }
-
-
-                switch (command) {
-                    case "create_parking_lot":
-                        createParkingLot(params.get(0), params.get(1));
-                        break;
-                    case "add_truck":
-                        Truck truck = new Truck(params.get(0), params.get(1));
-                        result = addTruck(truck);
-                        break;
-                    case "ready":
-                        result = ready(params.get(0));
-                        break;
-                    case "load":
-                        result = load(params.get(0), params.get(1));
-                        break;
-                    case "delete_parking_lot":
-                        deleteParkingLot(params.get(0));
-                        break;
-                    case "count":
-                        result = String.valueOf(count(params.get(0)));
-                        break;
-                }
-
-                if (!result.isEmpty()) {
-                    writer.write(result);
-                    writer.newLine();
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-
-
-    public static void createParkingLot(int capacityConstraint, int truckLimit) {
-        ParkingLot parkingLot = new ParkingLot(capacityConstraint, truckLimit);
-        allParkingLots.root = allParkingLots.insert(allParkingLots.root, null, parkingLot);
-        availableParkingLots.root = availableParkingLots.insert(availableParkingLots.root, null, parkingLot);
-    }
-
-    public static void deleteParkingLot(int capacityConstraint){
-        allParkingLots.root = allParkingLots.delete(allParkingLots.root, capacityConstraint);
-        availableParkingLots.root = availableParkingLots.delete(availableParkingLots.root, capacityConstraint);
-        readyParkingLots.root = readyParkingLots.delete(readyParkingLots.root, capacityConstraint);
-        waitingParkingLots.root = waitingParkingLots.delete(waitingParkingLots.root, capacityConstraint);
-    }
-
-    // Attempts to add a truck to an available parking lot based on the truck's capacity.
-    // Returns the ID of the parking lot if added successfully, or "-1" if no suitable lot is found.
-    public static String addTruck(Truck truck){
-        AVLNode root = availableParkingLots.root;
-        if (root == null) {
-            return "-1";
-        }
-
-        AVLNode current = root;
-        Stack<AVLNode> stack = new Stack<>();
-        String result = "-1";
-        int capacityConstraint = truck.getCapacity() - truck.getLoad();
-
-        // Search for a lot with matching or greater capacity
-        while (true) {
-            if (current.key == capacityConstraint) {
-                current.parkingLot.getWaitingQueue().enqueue(truck);
-                waitingParkingLots.root = waitingParkingLots.insert(waitingParkingLots.root, null, current.parkingLot);
-                result = current.key + "";
-                allParkingLots.updateSumTree(current);
-                if (current.parkingLot.isFull()) {
-                    availableParkingLots.root = availableParkingLots.delete(availableParkingLots.root, current.key);
-                }
-                return result;
-            } else if (current.key > capacityConstraint) {
-                if (current.left == null) {
-                    current = current.left;
-                    break;
-                }
-                current = current.left;
-            } else {
-                if (current.right == null) {
-                    break;
-                }
-                stack.push(current);
-                current = current.right;
-            }
-        }
-
-        // If no exact match is found, use the stack and find the lot with smallest larger id
-        if (current != null || !stack.isEmpty()) {
-            while (current != null) {
-                stack.push(current);
-                current = current.right;
-            }
-            current = stack.pop();
-            current.parkingLot.getWaitingQueue().enqueue(truck);
-            waitingParkingLots.root = waitingParkingLots.insert(waitingParkingLots.root, null, current.parkingLot);
-            result = current.key + "";
-            allParkingLots.updateSumTree(current);
-            if (current.parkingLot.isFull()) {
-                availableParkingLots.root = availableParkingLots.delete(availableParkingLots.root, current.key);
-            }
-            return result;
-        }
-        return "-1";
-    }
-
-    // Moves a truck from the waiting queue to the ready queue in the specified parking lot
-    // Returns the truck ID and lot ID if successful, or "-1" if no matching lot is found
-    public static String ready(int capacityConstraint){
-        AVLNode root = waitingParkingLots.root;
-        if (root == null) {
-            return "-1";
-        }
-
-        AVLNode current = root;
-        Stack<AVLNode> stack = new Stack<>();
-        String result;
-
-        // Traverse the AVL tree to find a node matching the capacity constraint
-        while (true) {
-            if (current.key == capacityConstraint) {
-                Truck truck = current.parkingLot.getWaitingQueue().dequeue();
-                current.parkingLot.getReadyQueue().enqueue(truck);
-                result = truck.getId() + " " + current.key;
-                readyParkingLots.root = readyParkingLots.insert(readyParkingLots.root, null, current.parkingLot);
-                if (current.parkingLot.getWaitingQueue().isEmpty()) {
-                    waitingParkingLots.root = waitingParkingLots.delete(waitingParkingLots.root, current.key);
-                }
-                return result;
-            } else if (current.key < capacityConstraint) {
-                if (current.right == null) {
-                    current = current.right;
-                    break;
-                }
-                current = current.right;
+        boolean pipelined = false;
+        boolean btree = false;
+        int universe = BitsetLotIndex.DEFAULT_UNIVERSE;
+        double tombstoneFraction = 0;
+        String snapshotPath = null;
+        String restorePath = null;
+        String journalPath = null;
+        int syncInterval = Journal.DEFAULT_SYNC_INTERVAL;
+        int syncMillis = Journal.DEFAULT_SYNC_MILLIS;
+        int compactInterval = Journal.DEFAULT_COMPACT_INTERVAL;
+        int servePort = -1;
+        int ioThreads = 1;
+        String batchPath = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int argIndex = 0;
+        while (argIndex < args.length && args[argIndex].startsWith("--")) {
+            if (args[argIndex].equals("--pipelined")) {
+                pipelined = true;
+            } else if (args[argIndex].equals("--index=avl")) {
+                btree = false;
+            } else if (args[argIndex].equals("--index=btree")) {
+                btree = true;
+            } else if (args[argIndex].startsWith("--universe=")) {
+                universe = Integer.parseInt(args[argIndex].substring("--universe=".length()));
+            } else if (args[argIndex].startsWith("--lazy-delete=")) {
+                tombstoneFraction = Double.parseDouble(args[argIndex].substring("--lazy-delete=".length()));
+            } else if (args[argIndex].startsWith("--snapshot-file=")) {
+                snapshotPath = args[argIndex].substring("--snapshot-file=".length());
+            } else if (args[argIndex].startsWith("--restore=")) {
+                restorePath = args[argIndex].substring("--restore=".length());
+            } else if (args[argIndex].startsWith("--journal=")) {
+                journalPath = args[argIndex].substring("--journal=".length());
+            } else if (args[argIndex].startsWith("--fsync-interval=")) {
+                syncInterval = Integer.parseInt(args[argIndex].substring("--fsync-interval=".length()));
+            } else if (args[argIndex].startsWith("--fsync-millis=")) {
+                syncMillis = Integer.parseInt(args[argIndex].substring("--fsync-millis=".length()));
+            } else if (args[argIndex].startsWith("--compact-interval=")) {
+                compactInterval = Integer.parseInt(args[argIndex].substring("--compact-interval=".length()));
+            } else if (args[argIndex].startsWith("--serve=")) {
+                servePort = Integer.parseInt(args[argIndex].substring("--serve=".length()));
+            } else if (args[argIndex].startsWith("--io-threads=")) {
+                ioThreads = Integer.parseInt(args[argIndex].substring("--io-threads=".length()));
+            } else if (args[argIndex].startsWith("--batch=")) {
+                batchPath = args[argIndex].substring("--batch=".length());
+            } else if (args[argIndex].startsWith("--threads=")) {
+                threads = Integer.parseInt(args[argIndex].substring("--threads=".length()));
             } else {
-                if (current.left == null) {
-                    break;
-                }
-                stack.push(current);
-                current = current.left;
-            }
-        }
-
-        // If no exact match, attempt to find the closest available lot
-        if (current != null || !stack.isEmpty()) {
-            while (current != null) {
-                stack.push(current);
-                current = current.left;
-            }
-            current = stack.pop();
-            Truck truck = current.parkingLot.getWaitingQueue().dequeue();
-            current.parkingLot.getReadyQueue().enqueue(truck);
-            result = truck.getId() + " " + current.key;
-            readyParkingLots.root = readyParkingLots.insert(readyParkingLots.root, null, current.parkingLot);
-            if (current.parkingLot.getWaitingQueue().isEmpty()) {
-                waitingParkingLots.root = waitingParkingLots.delete(waitingParkingLots.root, current.key);
-            }
-            return result;
-        }
-        return "-1";
-    }
-
-    // Loads trucks in the specified parking lot until the load requirement is met or trucks are depleted
-    // Returns a report of the trucks loaded and their new lot IDs or "-1" if no trucks were available
-    public static String load(int capacityConstraint, int load){
-        AVLNode root = readyParkingLots.root;
-        if (root == null) {
-            return "-1";
-        }
-
-        ArrayList<Integer> ids = new ArrayList<>();
-        ArrayList<Integer> results = new ArrayList<>();
-        ArrayList<Integer> keysToDelete = new ArrayList<>();
-        String result;
-        String report;
-        Truck truck;
-
-        AVLNode current = root;
-        Stack<AVLNode> stack = new Stack<>();
-
-        // Traverse AVL tree to find node matching capacity constraint
-        while (true) {
-            if (current.key == capacityConstraint) {
-                while (load != 0 && !current.parkingLot.getReadyQueue().isEmpty()) {
-                    truck = current.parkingLot.getReadyQueue().dequeue();
-                    allParkingLots.updateSumTree(current);
-                    availableParkingLots.root = availableParkingLots.insert(availableParkingLots.root, null, current.parkingLot);
-                    load = truck.loadTruck(load, current.key);
-
-                    if (truck.isFull()) {
-                        truck.unloadTruck();
+                System.err.println("Unknown option " + args[argIndex]);
+                return;
+            }
+            argIndex++;
+        }
+
+        if (batchPath != null) {
+            if (pipelined || servePort >= 0 || snapshotPath != null || restorePath != null || journalPath != null) {
+                System.err.println("--batch only takes the --index, --universe, --lazy-delete and --threads options");
+                return;
+            }
+            // The stats are global, concurrent scenarios would update their histograms at the same time
+            if (Stats.ENABLED && threads > 1) {
+                System.err.println("Stats are enabled, running the batch on one thread");
+                threads = 1;
+            }
+            try {
+                new Batch(batchPath, args[argIndex], threads, btree, universe, tombstoneFraction).run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (Stats.ENABLED) {
+                Stats.dump();
+            }
+            return;
+        }
+
+        Simulator simulator = new Simulator(btree, universe, tombstoneFraction);
+        String inputFilePath = (servePort < 0) ? args[argIndex] : null;
+        String outputFilePath = (servePort < 0) ? args[argIndex + 1] : "server";
+        simulator.setSnapshotPath((snapshotPath != null) ? snapshotPath : outputFilePath + ".snapshot");
+        if (restorePath != null && journalPath != null) {
+            System.err.println("--restore cannot be combined with --journal, the journal keeps its own snapshot");
+            return;
+        }
+        Journal journal = null;
+        try {
+            if (restorePath != null) {
+                simulator.restore(restorePath);
+            }
+            if (journalPath != null) {
+                journal = Journal.open(journalPath, syncInterval, syncMillis, compactInterval, simulator);
+                simulator.setJournal(journal);
+                Journal opened = journal;
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        opened.close();
+                    } catch (IOException e) {
+                        e.printStackTrace();
                     }
-
-                    result = addTruck(truck);
-                    results.add(Integer.parseInt(result));
-                    ids.add(truck.getId());
-                }
-                if (load == 0) {
-                    report = ids.get(0) + " " + results.get(0);
-                    for (int i = 1; i < ids.size(); i++) {
-                        report += " - " + ids.get(i);
-                        report += " " + results.get(i);
-                    }
-                    if (current.parkingLot.getReadyQueue().isEmpty()) {
-                        readyParkingLots.root = readyParkingLots.delete(readyParkingLots.root, current.key);
-                    }
-                    return report;
-                }
-                if (current.parkingLot.getReadyQueue().isEmpty()) {
-                    keysToDelete.add(current.key);
-                }
-                current = current.right;
-                break;
-            } else if (current.key < capacityConstraint) {
-                if (current.right == null) {
-                    current = current.right;
-                    break;
-                }
-                current = current.right;
-            } else {
-                if (current.left == null) {
-                    break;
-                }
-                stack.push(current);
-                current = current.left;
+                }, "journal-close"));
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
         }
 
-        // If no exact match, continue AVL traversal to load trucks from closest lots
-        while (current != null || !stack.isEmpty()) {
-            while (current != null) {
-                stack.push(current);
-                current = current.left;
+        if (servePort >= 0) {
+            try {
+                new Server(simulator, servePort, ioThreads).run();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            current = stack.pop();
-            while (load != 0 && !current.parkingLot.getReadyQueue().isEmpty()) {
-                truck = current.parkingLot.getReadyQueue().dequeue();
-                allParkingLots.updateSumTree(current);
-                availableParkingLots.root = availableParkingLots.insert(availableParkingLots.root, null, current.parkingLot);
-                load = truck.loadTruck(load, current.key);
-
-                if (truck.isFull()) {
-                    truck.unloadTruck();
-
-                }
-
-                result = addTruck(truck);
-                results.add(Integer.parseInt(result));
-                ids.add(truck.getId());
-
+        } else if (pipelined) {
+            try {
+                new Pipeline(simulator, inputFilePath, outputFilePath).run();
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
             }
-            if (load == 0) {
-                report = ids.get(0) + " " + results.get(0);
-                for (int i = 1; i < ids.size(); i++) {
-                    report += " - " + ids.get(i);
-                    report += " " + results.get(i);
-                }
-                if (current.parkingLot.getReadyQueue().isEmpty()) {
-                    readyParkingLots.root = readyParkingLots.delete(readyParkingLots.root, current.key);
-                }
-                for (int key:keysToDelete) {
-                    readyParkingLots.root = readyParkingLots.delete(readyParkingLots.root, key);
-                }
-                return report;
-            }
-            if (current.parkingLot.getReadyQueue().isEmpty()) {
-                keysToDelete.add(current.key);
+        } else {
+            try {
+                simulator.run(inputFilePath, outputFilePath);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-            current = current.right;
-        }
-        if (ids.isEmpty()) {
-            return "-1";
-        }
-        report = ids.get(0) + " " + results.get(0);
-        for (int i = 1; i < ids.size(); i++) {
-            report += " - " + ids.get(i);
-            report += " " + results.get(i);
-        }
-        for (int key:keysToDelete) {
-            readyParkingLots.root = readyParkingLots.delete(readyParkingLots.root, key);
         }
-        return report;
 
-    }
-
-    public static int count(int capacityConstraint){
-        AVLNode root = allParkingLots.root;
-        if (root == null) {
-            return 0;
-        }
-
-        // Traverse the tree to find the smallest node with capacity greater than capacityConstraint
-        AVLNode current = root;
-        AVLNode minNode = null;
-        int total = 0;
-        while (current != null) {
-            if (current.key > capacityConstraint) {
-                minNode = current;
-                current = current.left;
-            } else {
-                current = current.right;
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
-
-        // Traverse upwards from minNode and sum counts of nodes with sufficient capacity
-        boolean fromLeft = true;
-        current = minNode;
-        while (current != null) {
-            if (fromLeft) {
-                total += current.sum + current.rightSum;
-            } else {
-                if (current.key > capacityConstraint) {
-                    total += current.sum;
-                }
-            }
-            if (current.parent != null && current.key < current.parent.key) {
-                fromLeft = true;
-            } else {
-                fromLeft = false;
-            }
-            current = current.parent;
+        if (Stats.ENABLED) {
+            Stats.dump();
         }
-        return total;
     }
 
     public static boolean areFilesIdentical(String filePath1, String filePath2) {
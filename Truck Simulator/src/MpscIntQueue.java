@@ -0,0 +1,61 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bounded lock-free queue of fixed size int records for many producer threads and one consumer thread.
+// Producers claim a slot with a CAS on the tail, fill it and publish it through the slot's sequence number,
+// the consumer reads the slots in order and hands each one back by advancing its sequence a full lap.
+public class MpscIntQueue {
+    private final int recordSize;
+    private final int[] elements;
+    private final AtomicLongArray sequences;  // Slot i is free for index n when it holds n, filled when it holds n + 1
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();  // Next index a producer claims
+    private long head;  // Next index the consumer reads, only touched by the consumer
+
+    // The capacity in records is rounded up to a power of two
+    public MpscIntQueue(int capacity, int recordSize) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+        this.recordSize = recordSize;
+        this.elements = new int[size * recordSize];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // Appends record[0..recordSize), waiting while the queue is full
+    public void put(int[] record) {
+        long index;
+        int slot;
+        int idleCount = 0;
+        while (true) {
+            index = tail.get();
+            slot = (int) index & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == index) {
+                if (tail.compareAndSet(index, index + 1)) {
+                    break;
+                }
+            } else if (sequence < index) {
+                // The consumer has not freed the slot from the previous lap yet
+                IntRing.idle(idleCount++);
+            }
+        }
+        System.arraycopy(record, 0, elements, slot * recordSize, recordSize);
+        sequences.lazySet(slot, index + 1);
+    }
+
+    // Removes the next record into record[0..recordSize), returns false if none is published yet
+    public boolean poll(int[] record) {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return false;
+        }
+        System.arraycopy(elements, slot * recordSize, record, 0, recordSize);
+        sequences.lazySet(slot, head + mask + 1);
+        head++;
+        return true;
+    }
+}
@@ -1,28 +1,45 @@
 public class ParkingLot {
     private final int capacityConstraint;
     private final int truckLimit;
-    private final Queue<Truck> waitingQueue;
-    private final Queue<Truck> readyQueue;
+    private final IntQueue waitingQueue;  // Handles of trucks in the TruckStore
+    private final IntQueue readyQueue;
+    AVLNode node;  // Node holding this lot when it is indexed by an AVLTree, kept up to date by the tree
 
     public ParkingLot(int capacityConstraint, int truckLimit) {
         this.capacityConstraint = capacityConstraint;
         this.truckLimit = truckLimit;
-        this.waitingQueue = new Queue<>();
-        this.readyQueue = new Queue<>();
+        this.waitingQueue = new IntQueue();
+        this.readyQueue = new IntQueue();
+    }
+
+    // Lot whose queues are sized for the given numbers of trucks
+    public ParkingLot(int capacityConstraint, int truckLimit, int waitingCapacity, int readyCapacity) {
+        this.capacityConstraint = capacityConstraint;
+        this.truckLimit = truckLimit;
+        this.waitingQueue = new IntQueue(waitingCapacity);
+        this.readyQueue = new IntQueue(readyCapacity);
     }
 
     public int getCapacityConstraint() {
         return capacityConstraint;
     }
 
-    public Queue<Truck> getWaitingQueue() {
+    public int getTruckLimit() {
+        return truckLimit;
+    }
+
+    public IntQueue getWaitingQueue() {
         return waitingQueue;
     }
 
-    public Queue<Truck> getReadyQueue() {
+    public IntQueue getReadyQueue() {
         return readyQueue;
     }
 
+    public int getTruckCount() {
+        return waitingQueue.size() + readyQueue.size();
+    }
+
     public boolean isFull() {
         return waitingQueue.size() + readyQueue.size() == truckLimit;
     }
@@ -0,0 +1,155 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// Runs the simulator as a three stage pipeline: a reader thread parses commands into a ring,
+// the calling thread simulates them and emits result records into a second ring,
+// and a writer thread formats those records and writes them to the output file.
+// Each ring has a single producer and a single consumer, so commands and results keep their order.
+public class Pipeline {
+    private static final int RING_SIZE = 1 << 16;
+    private static final int END = -1;  // Opcode ending the command stream, header ending the result stream
+    private static final int CHUNK_SIZE = 256;  // Maximum number of values in one result record
+
+    private final Simulator simulator;
+    private final String inputFilePath;
+    private final String outputFilePath;
+    private final IntRing commands = new IntRing(RING_SIZE);
+    private final IntRing results = new IntRing(RING_SIZE);
+    private volatile IOException failure;
+
+    public Pipeline(Simulator simulator, String inputFilePath, String outputFilePath) {
+        this.simulator = simulator;
+        this.inputFilePath = inputFilePath;
+        this.outputFilePath = outputFilePath;
+    }
+
+    public void run() throws IOException, InterruptedException {
+        Thread reader = new Thread(this::readCommands, "command-reader");
+        Thread writer = new Thread(this::writeResults, "result-writer");
+        // If simulating fails the reader may block on a full ring, it must not keep the JVM alive
+        reader.setDaemon(true);
+        reader.start();
+        writer.start();
+
+        ResultWriter previous = simulator.getOutput();
+        RecordWriter records = new RecordWriter(results);
+        simulator.setOutput(records);
+        try {
+            int[] params = new int[Command.MAX_PARAMETERS];
+            while (true) {
+                int command = commands.read();
+                params[0] = commands.read();
+                params[1] = commands.read();
+                if (command == END) {
+                    break;
+                }
+                simulator.execute(command, params);
+                records.endLine();
+            }
+            simulator.flushCreates();
+        } finally {
+            results.write(END);
+            results.publish();
+            simulator.setOutput(previous);
+        }
+
+        reader.join();
+        writer.join();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // Command records are three ints: the opcode and two parameters
+    private void readCommands() {
+        try (CommandReader reader = new CommandReader(inputFilePath)) {
+            while (reader.next()) {
+                commands.write(reader.command);
+                commands.write(reader.params[0]);
+                commands.write(reader.params[1]);
+            }
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            commands.write(END);
+            commands.write(0);
+            commands.write(0);
+            commands.publish();
+        }
+    }
+
+    // Result records are a header of (value count << 1 | ends line) followed by the values
+    private void writeResults() {
+        ByteOutput output = null;
+        try {
+            output = new ByteOutput(new FileOutputStream(outputFilePath));
+        } catch (IOException e) {
+            failure = e;
+        }
+        try {
+            while (true) {
+                int header = results.read();
+                if (header == END) {
+                    break;
+                }
+                for (int i = header >>> 1; i > 0; i--) {
+                    int value = results.read();
+                    if (output != null) {
+                        output.write(value);
+                    }
+                }
+                if ((header & 1) == 1 && output != null) {
+                    output.endLine();
+                }
+            }
+            if (output != null) {
+                output.close();
+            }
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    // Collects the values of a result line and passes them on as records.
+    // Long lines are split into several records so a record always fits into the ring.
+    private static class RecordWriter implements ResultWriter {
+        private final IntRing ring;
+        private final int[] chunk = new int[CHUNK_SIZE];
+        private int chunkSize;
+        private boolean lineEmpty = true;
+
+        RecordWriter(IntRing ring) {
+            this.ring = ring;
+        }
+
+        @Override
+        public void write(int value) {
+            if (chunkSize == chunk.length) {
+                flush(false);
+            }
+            chunk[chunkSize++] = value;
+            lineEmpty = false;
+        }
+
+        @Override
+        public boolean isLineEmpty() {
+            return lineEmpty;
+        }
+
+        @Override
+        public void endLine() {
+            if (!lineEmpty) {
+                flush(true);
+                lineEmpty = true;
+            }
+        }
+
+        private void flush(boolean endsLine) {
+            ring.write(chunkSize << 1 | (endsLine ? 1 : 0));
+            for (int i = 0; i < chunkSize; i++) {
+                ring.write(chunk[i]);
+            }
+            chunkSize = 0;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+// Receives the output of the command handlers, one result line at a time.
+// A line is a sequence of ints, consecutive values form "<a> <b>" pairs and pairs are separated by " - ".
+public interface ResultWriter {
+    // Appends the next value of the current line
+    void write(int value);
+
+    boolean isLineEmpty();
+
+    // Terminates the current line unless nothing was written to it
+    void endLine();
+}
@@ -0,0 +1,338 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Serves the simulator's line protocol over TCP on the loopback interface.
+// A few IO threads run non-blocking selectors, parse complete lines from every connection and put the commands
+// into one lock-free MPSC queue. The calling thread is the only one touching the simulator: it drains the queue,
+// formats each reply into its connection's buffer and hands the collected bytes back once per drained batch.
+// With a journal the batch is a group commit: its records are written before any of its replies leave, and the
+// journal is forced to the disk when the server goes idle.
+// Every request is answered with exactly one line, commands without output and unknown commands get an empty one,
+// so clients can pipeline requests and match replies by order.
+public class Server {
+    private static final int QUEUE_SIZE = 1 << 16;
+    private static final int REQUEST_INTS = 4;  // Connection id, opcode and two parameters
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int BATCH_LIMIT = 4096;  // Requests simulated before replies are handed back
+
+    private final Simulator simulator;
+    private final int port;
+    private final IoLoop[] loops;
+    private final MpscIntQueue requests = new MpscIntQueue(QUEUE_SIZE, REQUEST_INTS);
+    private final ConcurrentHashMap<Integer, Connection> connections = new ConcurrentHashMap<>();
+    private final ByteOutput discarded = new ByteOutput(OutputStream.nullOutputStream());
+
+    public Server(Simulator simulator, int port, int ioThreads) {
+        this.simulator = simulator;
+        this.port = port;
+        this.loops = new IoLoop[Math.max(ioThreads, 1)];
+    }
+
+    // Starts the IO threads and simulates on the calling thread, never returns normally
+    public void run() throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new IoLoop(i);
+        }
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+        for (IoLoop loop : loops) {
+            Thread thread = new Thread(loop, "server-io-" + loop.index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        System.err.println("Listening on " + serverChannel.getLocalAddress());
+        simulate();
+    }
+
+    private void simulate() {
+        int[] request = new int[REQUEST_INTS];
+        int[] params = new int[Command.MAX_PARAMETERS];
+        ArrayList<Connection> touched = new ArrayList<>();
+        Connection last = null;
+        int idleCount = 0;
+        while (true) {
+            int handled = 0;
+            while (handled < BATCH_LIMIT && requests.poll(request)) {
+                Connection connection = (last != null && last.id == request[0]) ? last : connections.get(request[0]);
+                last = connection;
+                ByteOutput output = (connection != null) ? connection.output : discarded;
+                simulator.setOutput(output);
+                if (request[1] != Command.UNKNOWN) {
+                    params[0] = request[2];
+                    params[1] = request[3];
+                    simulator.execute(request[1], params);
+                }
+                output.endLineAlways();
+                if (connection != null) {
+                    connection.replyLines++;
+                    if (!connection.touched) {
+                        connection.touched = true;
+                        touched.add(connection);
+                    }
+                }
+                handled++;
+            }
+            if (handled == 0) {
+                if (idleCount == 0) {
+                    simulator.syncJournal();
+                }
+                IntRing.idle(idleCount++);
+                continue;
+            }
+            idleCount = 0;
+            simulator.commitJournal();
+
+            for (Connection connection : touched) {
+                connection.touched = false;
+                try {
+                    connection.output.flush();
+                } catch (IOException e) {
+                    // Writing to the in-memory stream cannot fail
+                }
+                ByteBuffer reply = ByteBuffer.wrap(connection.replies.toByteArray());
+                connection.replies.reset();
+                connection.loop.replies.add(new Reply(connection, reply, connection.replyLines));
+                connection.replyLines = 0;
+                connection.loop.wakeupPending = true;
+            }
+            touched.clear();
+            for (IoLoop loop : loops) {
+                if (loop.wakeupPending) {
+                    loop.wakeupPending = false;
+                    loop.selector.wakeup();
+                }
+            }
+        }
+    }
+
+    private static class Connection {
+        final int id;
+        final SocketChannel channel;
+        final IoLoop loop;
+
+        // IO thread side
+        ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+        SelectionKey key;
+        long queued;  // Requests put into the queue
+        long answered;  // Reply lines received from the simulation thread
+        boolean inputClosed;  // The client shut its side down, the connection closes once every reply is sent
+
+        // Simulation thread side
+        final ByteArrayOutputStream replies = new ByteArrayOutputStream();
+        final ByteOutput output = new ByteOutput(replies);
+        int replyLines;
+        boolean touched;
+
+        Connection(int id, SocketChannel channel, IoLoop loop) {
+            this.id = id;
+            this.channel = channel;
+            this.loop = loop;
+        }
+    }
+
+    private static class Reply {
+        final Connection connection;
+        final ByteBuffer bytes;
+        final int lines;
+
+        Reply(Connection connection, ByteBuffer bytes, int lines) {
+            this.connection = connection;
+            this.bytes = bytes;
+            this.lines = lines;
+        }
+    }
+
+    private class IoLoop implements Runnable {
+        final int index;
+        final Selector selector;
+        final ConcurrentLinkedQueue<Connection> accepted = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<Reply> replies = new ConcurrentLinkedQueue<>();
+        boolean wakeupPending;  // Only used by the simulation thread
+
+        // Accepting thread only
+        private int nextConnectionId;
+        private int nextLoop;
+
+        private final int[] request = new int[REQUEST_INTS];
+        private final int[] params = new int[Command.MAX_PARAMETERS];
+
+        IoLoop(int index) throws IOException {
+            this.index = index;
+            this.selector = Selector.open();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    // Connections accepted by this loop itself are registered here too, before it blocks again
+                    registerAccepted();
+                    sendReplies();
+                    selector.select();
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept((ServerSocketChannel) key.channel());
+                            continue;
+                        }
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                read(connection);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                write(connection);
+                            }
+                        } catch (IOException e) {
+                            close(connection);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void accept(ServerSocketChannel serverChannel) throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                IoLoop loop = loops[nextLoop];
+                nextLoop = (nextLoop + 1) % loops.length;
+                Connection connection = new Connection(nextConnectionId++, channel, loop);
+                connections.put(connection.id, connection);
+                loop.accepted.add(connection);
+                if (loop != this) {
+                    loop.selector.wakeup();
+                }
+            }
+        }
+
+        private void registerAccepted() throws ClosedChannelException {
+            Connection connection;
+            while ((connection = accepted.poll()) != null) {
+                connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+            }
+        }
+
+        private void sendReplies() {
+            Reply reply;
+            while ((reply = replies.poll()) != null) {
+                Connection connection = reply.connection;
+                if (!connection.channel.isOpen()) {
+                    continue;
+                }
+                connection.pendingWrites.add(reply.bytes);
+                connection.answered += reply.lines;
+                try {
+                    write(connection);
+                } catch (IOException e) {
+                    close(connection);
+                }
+            }
+        }
+
+        // Parses every complete line read so far, a partial last line stays in the buffer
+        private void read(Connection connection) throws IOException {
+            ByteBuffer buffer = connection.readBuffer;
+            if (!buffer.hasRemaining()) {
+                ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                buffer.flip();
+                grown.put(buffer);
+                connection.readBuffer = buffer = grown;
+            }
+            boolean endOfInput = connection.channel.read(buffer) < 0;
+
+            int lineStart = 0;
+            int end = buffer.position();
+            for (int i = 0; i < end; i++) {
+                if (buffer.get(i) == '\n') {
+                    submit(connection, lineStart, i);
+                    lineStart = i + 1;
+                }
+            }
+            if (endOfInput) {
+                // A last line without a newline still counts
+                if (lineStart < end) {
+                    submit(connection, lineStart, end);
+                }
+                buffer.clear();
+                connection.inputClosed = true;
+                write(connection);
+                return;
+            }
+            buffer.limit(end).position(lineStart);
+            buffer.compact();
+        }
+
+        private void submit(Connection connection, int start, int end) {
+            int command = CommandReader.parseLine(connection.readBuffer, start, end, params);
+            if (command == CommandReader.BLANK) {
+                return;
+            }
+            request[0] = connection.id;
+            request[1] = command;
+            request[2] = params[0];
+            request[3] = params[1];
+            requests.put(request);
+            connection.queued++;
+        }
+
+        private void write(Connection connection) throws IOException {
+            ArrayDeque<ByteBuffer> pending = connection.pendingWrites;
+            while (!pending.isEmpty()) {
+                ByteBuffer head = pending.peek();
+                connection.channel.write(head);
+                if (head.hasRemaining()) {
+                    break;
+                }
+                pending.poll();
+            }
+            if (connection.inputClosed && pending.isEmpty() && connection.answered == connection.queued) {
+                close(connection);
+                return;
+            }
+            int interest = connection.inputClosed ? 0 : SelectionKey.OP_READ;
+            if (!pending.isEmpty()) {
+                interest |= SelectionKey.OP_WRITE;
+            }
+            if (connection.key.interestOps() != interest) {
+                connection.key.interestOps(interest);
+            }
+        }
+
+        // Requests already queued from the connection are still simulated, their replies are dropped
+        private void close(Connection connection) {
+            connections.remove(connection.id);
+            connection.key.cancel();
+            try {
+                connection.channel.close();
+            } catch (IOException e) {
+                // Nothing left to do for a connection that is going away
+            }
+        }
+    }
+}
@@ -0,0 +1,442 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// State of one simulation and the command handlers working on it.
+// Simulators share nothing but the stats, so any number of them can run side by side on different threads.
+public class Simulator {
+    // Truck counts per capacity constraint, answers count queries without touching the lot index
+    private final CapacityIndex truckCounts = new CapacityIndex();
+    // Single index holding every parking lot and tracking which states each lot is in.
+    // Its truck sums only cover lots whose keys fall outside the capacity index.
+    private final LotIndex parkingLots;
+    // Every truck in the system, lots queue the trucks' handles
+    private final TruckStore trucks = new TruckStore();
+
+    // Receives the output line of the command handlers
+    private ResultWriter output = new ByteOutput(OutputStream.nullOutputStream());
+
+    // Run of consecutive create_parking_lot commands that has not been added to the index yet
+    private final CreateBuffer pendingCreates = new CreateBuffer();
+
+    // File written by the snapshot command
+    private String snapshotPath;
+    // Journal of the applied commands, null when journaling is off
+    private Journal journal;
+
+    // Reusable buffers for the trucks released from one lot during load and the lots they were placed into.
+    // touchedTrucks counts the trucks of each run placed into the same lot, they are not in truckCounts yet.
+    // Both are cleared at the end of every load batch.
+    private int[] released = new int[16];
+    private ParkingLot[] touched = new ParkingLot[16];
+    private int[] touchedTrucks = new int[16];
+    // Trucks released by the current load, only counted for the stats
+    private int movedTrucks;
+
+    // Lots are kept in a B+ tree or an AVL tree, with the keys below universe kept in bitsets in front of it
+    public Simulator(boolean btree, int universe) {
+        this(btree, universe, 0);
+    }
+
+    // A positive tombstoneFraction deletes lazily from the AVL tree, see AVLTree
+    public Simulator(boolean btree, int universe, double tombstoneFraction) {
+        parkingLots = createIndex(btree, universe, tombstoneFraction);
+    }
+
+    public LotIndex getParkingLots() {
+        return parkingLots;
+    }
+
+    public TruckStore getTrucks() {
+        return trucks;
+    }
+
+    public CapacityIndex getTruckCounts() {
+        return truckCounts;
+    }
+
+    public ResultWriter getOutput() {
+        return output;
+    }
+
+    public void setOutput(ResultWriter output) {
+        this.output = output;
+    }
+
+    public void setSnapshotPath(String snapshotPath) {
+        this.snapshotPath = snapshotPath;
+    }
+
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    // Loads a snapshot into this simulator, returns the command sequence it was taken at
+    public long restore(String path) throws IOException {
+        return Snapshot.restore(path, parkingLots, trucks, truckCounts);
+    }
+
+    // Runs every command of the input file on the calling thread and writes the results to the output file
+    public void run(String inputFilePath, String outputFilePath) throws IOException {
+        ResultWriter previous = output;
+        try (
+                CommandReader reader = new CommandReader(inputFilePath);
+                ByteOutput writer = new ByteOutput(new FileOutputStream(outputFilePath))
+        ) {
+            output = writer;
+            while (reader.next()) {
+                execute(reader.command, reader.params);
+                output.endLine();
+            }
+            flushCreates();
+        } finally {
+            output = previous;
+        }
+    }
+
+    // The bitsets only cover keys counted by the capacity index, the index behind them sums the rest
+    private LotIndex createIndex(boolean btree, int universe, double tombstoneFraction) {
+        int countedLimit = truckCounts.getMaxUniverse();
+        LotIndex index = btree ? new BTreeLotIndex(countedLimit) : new AVLTree(countedLimit, tombstoneFraction);
+        universe = Math.min(universe, countedLimit);
+        return (universe > 0) ? new BitsetLotIndex(universe, index) : index;
+    }
+
+    // Runs a decoded command, its output line is written to the output buffer.
+    // Creates are buffered and added in bulk as soon as any other command arrives.
+    public void execute(int command, int[] params) {
+        if (Stats.ENABLED) {
+            long start = System.nanoTime();
+            apply(command, params);
+            Stats.recordCommand(command, System.nanoTime() - start);
+        } else {
+            apply(command, params);
+        }
+    }
+
+    private void apply(int command, int[] params) {
+        if (journal != null && command != Command.SNAPSHOT && !journalCommand(command, params)) {
+            return;
+        }
+        if (command == Command.CREATE_PARKING_LOT) {
+            pendingCreates.add(params[0], params[1]);
+            return;
+        }
+        flushCreates();
+
+        switch (command) {
+            case Command.ADD_TRUCK:
+                addTruck(params[0], params[1]);
+                break;
+            case Command.READY:
+                ready(params[0]);
+                break;
+            case Command.READY_N:
+                readyN(params[0], params[1]);
+                break;
+            case Command.LOAD:
+                load(params[0], params[1]);
+                break;
+            case Command.DELETE_PARKING_LOT:
+                deleteParkingLot(params[0]);
+                break;
+            case Command.COUNT:
+                count(params[0]);
+                break;
+            case Command.COUNT_RANGE:
+                countRange(params[0], params[1]);
+                break;
+            case Command.SNAPSHOT:
+                snapshot();
+                break;
+        }
+    }
+
+    // Appends the command to the journal before it is applied, compacting the journal first when it is due.
+    // The buffered creates are already journaled, so they are flushed into the state the compaction saves.
+    // Returns false if the command could not be journaled, it is not applied then. That is also the case
+    // for the commands still arriving after a shutdown hook closed the journal.
+    private boolean journalCommand(int command, int[] params) {
+        if (journal.isClosed()) {
+            return false;
+        }
+        try {
+            if (journal.isCompactionDue()) {
+                flushCreates();
+                journal.compact(parkingLots, trucks);
+            }
+            journal.append(command, params);
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Group commit of the journal, called before the results of the commands run so far are handed out
+    public void commitJournal() {
+        if (journal != null) {
+            try {
+                journal.commit();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Forces the journal to the disk when no commands are coming in
+    public void syncJournal() {
+        if (journal != null) {
+            try {
+                journal.syncPending();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Adds the buffered run of created lots to the index
+    public void flushCreates() {
+        if (Stats.ENABLED && !pendingCreates.isEmpty()) {
+            long start = System.nanoTime();
+            pendingCreates.flush(parkingLots);
+            Stats.recordCreateFlush(System.nanoTime() - start);
+        } else {
+            pendingCreates.flush(parkingLots);
+        }
+    }
+
+    // Saves the current state, it is written between two commands so it never holds a half applied load
+    public void snapshot() {
+        try {
+            Snapshot.save(snapshotPath, parkingLots, trucks, (journal == null) ? 0 : journal.getSequence());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public void createParkingLot(int capacityConstraint, int truckLimit) {
+        parkingLots.insert(new ParkingLot(capacityConstraint, truckLimit));
+    }
+
+    public void deleteParkingLot(int capacityConstraint){
+        ParkingLot lot = parkingLots.delete(capacityConstraint);
+        if (lot == null) {
+            return;
+        }
+        changeTruckCount(capacityConstraint, -lot.getTruckCount());
+        removeTrucks(lot.getWaitingQueue());
+        removeTrucks(lot.getReadyQueue());
+    }
+
+    private void removeTrucks(IntQueue queue) {
+        for (int i = 0; i < queue.size(); i++) {
+            trucks.remove(queue.get(i));
+        }
+    }
+
+    // Keeps the capacity index in sync when trucks enter or leave a lot
+    private void changeTruckCount(int capacityConstraint, int delta) {
+        if (truckCounts.covers(capacityConstraint)) {
+            truckCounts.add(capacityConstraint, delta);
+        }
+    }
+
+    // Adds a truck to an available parking lot based on the truck's capacity.
+    // Writes the ID of the parking lot if added successfully, or -1 if no suitable lot is found.
+    public void addTruck(int truckId, int capacity){
+        int truck = trucks.add(truckId, capacity);
+        ParkingLot lot = placeTruck(truck);
+        if (lot == null) {
+            trucks.remove(truck);
+            output.write(-1);
+            return;
+        }
+        output.write(lot.getCapacityConstraint());
+    }
+
+    // Places the truck into the waiting queue of the largest lot that is not full and fits its remaining capacity.
+    // Returns the lot, or null if the truck could not be placed. A lot's ID can be -1 itself.
+    public ParkingLot placeTruck(int truck){
+        ParkingLot lot = parkingLots.floor(trucks.getRemainingCapacity(truck), LotIndex.AVAILABLE);
+        if (lot == null) {
+            return null;
+        }
+
+        lot.getWaitingQueue().enqueue(truck);
+        changeTruckCount(lot.getCapacityConstraint(), 1);
+        parkingLots.refresh(lot);
+        return lot;
+    }
+
+    // Moves a truck from the waiting queue to the ready queue in the specified parking lot
+    // Writes the truck ID and lot ID if successful, or -1 if no matching lot is found
+    public void ready(int capacityConstraint){
+        // Find the smallest lot with waiting trucks starting from the given capacity
+        ParkingLot lot = parkingLots.ceiling(capacityConstraint, LotIndex.WAITING);
+        if (lot == null) {
+            output.write(-1);
+            return;
+        }
+
+        int truck = lot.getWaitingQueue().dequeue();
+        lot.getReadyQueue().enqueue(truck);
+        parkingLots.refresh(lot);
+        output.write(trucks.getId(truck));
+        output.write(lot.getCapacityConstraint());
+    }
+
+    // Moves up to count trucks from waiting to ready, taking them from the smallest lots with waiting trucks
+    // starting from the given capacity, the same trucks count consecutive ready commands would move.
+    // Writes the truck ID and lot ID of every moved truck on one line, or -1 if no truck was moved.
+    public void readyN(int capacityConstraint, int count) {
+        ParkingLot lot = parkingLots.ceiling(capacityConstraint, LotIndex.WAITING);
+        while (lot != null && count > 0) {
+            // The trucks are moved as one block and the lot is refreshed once
+            IntQueue readyQueue = lot.getReadyQueue();
+            int start = readyQueue.size();
+            int moved = lot.getWaitingQueue().transferTo(readyQueue, count);
+            for (int i = start; i < start + moved; i++) {
+                output.write(trucks.getId(readyQueue.get(i)));
+                output.write(lot.getCapacityConstraint());
+            }
+            count -= moved;
+            parkingLots.refresh(lot);
+            lot = parkingLots.next(lot, LotIndex.WAITING);
+        }
+
+        if (output.isLineEmpty()) {
+            output.write(-1);
+        }
+    }
+
+    // Loads trucks in the specified parking lot until the load requirement is met or trucks are depleted
+    // Writes a report of the trucks loaded and their new lot IDs or -1 if no trucks were available
+    public void load(int capacityConstraint, int load){
+        // Walk the lots with ready trucks in increasing order of capacity until the load is distributed.
+        // Loading only changes lot states, so the current lot stays a valid cursor.
+        ParkingLot current = parkingLots.ceiling(capacityConstraint, LotIndex.READY);
+        while (current != null && load != 0) {
+            load = loadLot(current, load);
+            current = parkingLots.next(current, LotIndex.READY);
+        }
+
+        if (output.isLineEmpty()) {
+            output.write(-1);
+        }
+        if (Stats.ENABLED) {
+            Stats.recordTrucksMoved(movedTrucks);
+            movedTrucks = 0;
+        }
+    }
+
+    // Distributes the load over the ready trucks of one lot and redistributes them as a single batch.
+    // Returns the remaining load.
+    private int loadLot(ParkingLot lot, int load) {
+        IntQueue readyQueue = lot.getReadyQueue();
+        int capacityConstraint = lot.getCapacityConstraint();
+        int releasedCount = 0;
+
+        // When the load covers every ready truck, each one takes a full share and the queue is drained in one block
+        int readyCount = readyQueue.size();
+        if (capacityConstraint > 0 && load >= (long) readyCount * capacityConstraint) {
+            if (readyCount > released.length) {
+                released = new int[Math.max(readyCount, 2 * released.length)];
+            }
+            releasedCount = readyQueue.dequeue(released, 0, readyCount);
+            for (int i = 0; i < releasedCount; i++) {
+                trucks.loadTruck(released[i], capacityConstraint, capacityConstraint);
+                if (trucks.isFull(released[i])) {
+                    trucks.unloadTruck(released[i]);
+                }
+            }
+            load -= readyCount * capacityConstraint;
+        }
+
+        // Release every truck that receives load, the lot's counts change once for the whole block
+        while (load != 0 && !readyQueue.isEmpty()) {
+            int truck = readyQueue.dequeue();
+            load = trucks.loadTruck(truck, load, capacityConstraint);
+            if (trucks.isFull(truck)) {
+                trucks.unloadTruck(truck);
+            }
+            if (releasedCount == released.length) {
+                int[] grown = new int[2 * releasedCount];
+                System.arraycopy(released, 0, grown, 0, releasedCount);
+                released = grown;
+            }
+            released[releasedCount++] = truck;
+        }
+        changeTruckCount(capacityConstraint, -releasedCount);
+        if (Stats.ENABLED) {
+            movedTrucks += releasedCount;
+        }
+        parkingLots.refresh(lot);
+
+        // Place the trucks in release order, since trucks competing for the last slot of a lot are
+        // served first come first served. Freeing the whole block first gives the same result because
+        // the source lot is never full while its trucks are being placed.
+        int touchedCount = 0;
+        int lastRemaining = -1;
+        ParkingLot last = null;
+        for (int i = 0; i < releasedCount; i++) {
+            int truck = released[i];
+            int remaining = trucks.getRemainingCapacity(truck);
+
+            // A truck with the same remaining capacity as the previous one lands in the same lot until it is full
+            ParkingLot target = (remaining == lastRemaining && last != null && !last.isFull())
+                    ? last : parkingLots.floor(remaining, LotIndex.AVAILABLE);
+
+            output.write(trucks.getId(truck));
+            if (target == null) {
+                output.write(-1);
+                trucks.remove(truck);
+                lastRemaining = -1;
+                continue;
+            }
+            output.write(target.getCapacityConstraint());
+
+            target.getWaitingQueue().enqueue(truck);
+            if (touchedCount > 0 && touched[touchedCount - 1] == target) {
+                touchedTrucks[touchedCount - 1]++;
+            } else {
+                if (touchedCount == touched.length) {
+                    ParkingLot[] grown = new ParkingLot[2 * touchedCount];
+                    System.arraycopy(touched, 0, grown, 0, touchedCount);
+                    touched = grown;
+                    int[] grownTrucks = new int[2 * touchedCount];
+                    System.arraycopy(touchedTrucks, 0, grownTrucks, 0, touchedCount);
+                    touchedTrucks = grownTrucks;
+                }
+                touched[touchedCount] = target;
+                touchedTrucks[touchedCount++] = 1;
+            }
+            // Later placements of this block must already see that the lot became full
+            if (target.isFull()) {
+                parkingLots.refresh(target);
+            }
+            lastRemaining = remaining;
+            last = target;
+        }
+
+        // Aggregates of the destination lots are updated once per run of trucks placed into the same lot
+        for (int i = 0; i < touchedCount; i++) {
+            ParkingLot target = touched[i];
+            touched[i] = null;
+            changeTruckCount(target.getCapacityConstraint(), touchedTrucks[i]);
+            touchedTrucks[i] = 0;
+            parkingLots.refresh(target);
+        }
+        return load;
+    }
+
+    // Writes the number of trucks in lots with a capacity constraint greater than the given one
+    public void count(int capacityConstraint){
+        output.write(truckCounts.countGreater(capacityConstraint) + parkingLots.countGreater(capacityConstraint));
+    }
+
+    // Writes the number of trucks in lots with a capacity constraint between lo and hi, both inclusive
+    public void countRange(int lo, int hi){
+        output.write(truckCounts.countRange(lo, hi) + parkingLots.countRange(lo, hi));
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+// Runs a command file through the simulator in-process and reports throughput, allocation and a per-command
+// breakdown. Every run parses the file and formats the output like Main does, the output itself is discarded.
+// The throughput runs are not instrumented, the breakdown comes from one extra run timing every command.
+// Usage: java SimulatorBenchmark [--warmup=N] [--runs=N] [--index=avl|btree] [--universe=N] <input_file>
+public class SimulatorBenchmark {
+    public static void main(String[] args) throws IOException {
+        int warmup = 2;
+        int runs = 5;
+        boolean btree = false;
+        int universe = BitsetLotIndex.DEFAULT_UNIVERSE;
+        int argIndex = 0;
+        while (argIndex < args.length && args[argIndex].startsWith("--")) {
+            String arg = args[argIndex];
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(value);
+            } else if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(value);
+            } else if (arg.equals("--index=avl")) {
+                btree = false;
+            } else if (arg.equals("--index=btree")) {
+                btree = true;
+            } else if (arg.startsWith("--universe=")) {
+                universe = Integer.parseInt(value);
+            } else {
+                System.err.println("Unknown option " + arg);
+                return;
+            }
+            argIndex++;
+        }
+        String inputFilePath = args[argIndex];
+
+        for (int i = 0; i < warmup; i++) {
+            run(inputFilePath, btree, universe);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 1; i <= runs; i++) {
+            long gcCount = gcCount();
+            long gcMillis = gcMillis();
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            long commands = run(inputFilePath, btree, universe);
+            long elapsed = System.nanoTime() - start;
+            allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+            System.out.printf("run %d: %d commands in %.1f ms, %.0f commands/s, allocated %.1f MB (%.1f MB/s, "
+                            + "%.1f bytes/command), %d GCs taking %d ms%n",
+                    i, commands, elapsed / 1e6, commands * 1e9 / elapsed, allocated / 1e6,
+                    allocated * 1e3 / elapsed, (double) allocated / Math.max(commands, 1),
+                    gcCount() - gcCount, gcMillis() - gcMillis);
+        }
+        breakdown(inputFilePath, btree, universe);
+    }
+
+    // Runs the file on a fresh simulator the way Main's sequential mode does, returns the number of commands
+    private static long run(String inputFilePath, boolean btree, int universe) throws IOException {
+        Simulator simulator = new Simulator(btree, universe);
+        long commands = 0;
+        try (
+                CommandReader reader = new CommandReader(inputFilePath);
+                ByteOutput output = new ByteOutput(OutputStream.nullOutputStream())
+        ) {
+            simulator.setOutput(output);
+            while (reader.next()) {
+                simulator.execute(reader.command, reader.params);
+                output.endLine();
+                commands++;
+            }
+            simulator.flushCreates();
+        }
+        return commands;
+    }
+
+    // Times every command of one more run and prints count, share of the time and latency per command.
+    // Creates are buffered, the cost of adding a run of lots shows up in the command after it.
+    private static void breakdown(String inputFilePath, boolean btree, int universe) throws IOException {
+        LogHistogram[] latencies = new LogHistogram[Command.READY_N + 1];
+        long[] nanos = new long[latencies.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LogHistogram();
+        }
+        Simulator simulator = new Simulator(btree, universe);
+        try (
+                CommandReader reader = new CommandReader(inputFilePath);
+                ByteOutput output = new ByteOutput(OutputStream.nullOutputStream())
+        ) {
+            simulator.setOutput(output);
+            while (reader.next()) {
+                long start = System.nanoTime();
+                simulator.execute(reader.command, reader.params);
+                output.endLine();
+                long elapsed = System.nanoTime() - start;
+                latencies[reader.command].record(elapsed);
+                nanos[reader.command] += elapsed;
+            }
+            simulator.flushCreates();
+        }
+
+        long total = 0;
+        for (long commandNanos : nanos) {
+            total += commandNanos;
+        }
+        System.out.printf("%-20s %12s %7s %10s %10s %10s%n", "command", "count", "time", "mean ns", "p50 ns", "p99 ns");
+        for (int i = Command.CREATE_PARKING_LOT; i < latencies.length; i++) {
+            LogHistogram histogram = latencies[i];
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            System.out.printf("%-20s %12d %6.1f%% %10d %10d %10d%n", Command.name(i), histogram.getCount(),
+                    100.0 * nanos[i] / Math.max(total, 1), nanos[i] / histogram.getCount(),
+                    histogram.quantile(0.5), histogram.quantile(0.99));
+        }
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Binary image of the simulator state, all values are ints.
+// Header: MAGIC, VERSION, sequence as high and low int, lot count, truck count.
+// The sequence is the number of journaled commands the state includes, 0 when no journal is kept.
+// Then every lot in key order: capacity constraint, truck limit, waiting count, ready count,
+// followed by id, capacity and load of each waiting truck and then each ready truck in queue order.
+// Every truck is in exactly one queue, so the lots carry the whole truck store.
+public class Snapshot {
+    private static final int MAGIC = 0x54535331;  // "TSS1"
+    private static final int VERSION = 2;
+    private static final int HEADER_INTS = 6;
+    private static final int LOT_INTS = 4;
+    private static final int TRUCK_INTS = 3;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // Writes the state and forces it to the disk before returning
+    public static void save(String path, LotIndex lots, TruckStore trucks, long sequence) throws IOException {
+        int truckCount = 0;
+        for (ParkingLot lot = lots.ceiling(Integer.MIN_VALUE); lot != null; lot = lots.next(lot)) {
+            truckCount += lot.getTruckCount();
+        }
+
+        try (FileChannel channel = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(lots.size()).putInt(truckCount);
+            for (ParkingLot lot = lots.ceiling(Integer.MIN_VALUE); lot != null; lot = lots.next(lot)) {
+                ensureRoom(channel, buffer, LOT_INTS);
+                buffer.putInt(lot.getCapacityConstraint())
+                        .putInt(lot.getTruckLimit())
+                        .putInt(lot.getWaitingQueue().size())
+                        .putInt(lot.getReadyQueue().size());
+                writeTrucks(channel, buffer, lot.getWaitingQueue(), trucks);
+                writeTrucks(channel, buffer, lot.getReadyQueue(), trucks);
+            }
+            drain(channel, buffer);
+            channel.force(false);
+        }
+    }
+
+    private static void writeTrucks(FileChannel channel, ByteBuffer buffer, IntQueue queue, TruckStore trucks)
+            throws IOException {
+        for (int i = 0; i < queue.size(); i++) {
+            int truck = queue.get(i);
+            ensureRoom(channel, buffer, TRUCK_INTS);
+            buffer.putInt(trucks.getId(truck)).putInt(trucks.getCapacity(truck)).putInt(trucks.getLoad(truck));
+        }
+    }
+
+    private static void ensureRoom(FileChannel channel, ByteBuffer buffer, int ints) throws IOException {
+        if (buffer.remaining() < ints * Integer.BYTES) {
+            drain(channel, buffer);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Loads a snapshot into empty structures. The file is memory-mapped and read as ints,
+    // the truck store is sized up front and the lots are added to the index in one sorted batch.
+    // Returns the sequence stored in the snapshot.
+    public static long restore(String path, LotIndex lots, TruckStore trucks, CapacityIndex truckCounts)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            IntBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asIntBuffer();
+            if (data.remaining() < HEADER_INTS || data.get() != MAGIC) {
+                throw new IOException("Not a snapshot file: " + path);
+            }
+            int version = data.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long sequence = (long) data.get() << 32 | (data.get() & 0xFFFFFFFFL);
+            int lotCount = data.get();
+            int truckCount = data.get();
+            if (data.remaining() != (long) lotCount * LOT_INTS + (long) truckCount * TRUCK_INTS) {
+                throw new IOException("Truncated snapshot file: " + path);
+            }
+
+            trucks.ensureCapacity(truckCount);
+            ParkingLot[] restored = new ParkingLot[lotCount];
+            for (int i = 0; i < lotCount; i++) {
+                int capacityConstraint = data.get();
+                int truckLimit = data.get();
+                int waiting = data.get();
+                int ready = data.get();
+                ParkingLot lot = new ParkingLot(capacityConstraint, truckLimit, waiting, ready);
+                readTrucks(data, lot.getWaitingQueue(), waiting, trucks);
+                readTrucks(data, lot.getReadyQueue(), ready, trucks);
+                if (truckCounts.covers(capacityConstraint) && waiting + ready > 0) {
+                    truckCounts.add(capacityConstraint, waiting + ready);
+                }
+                restored[i] = lot;
+            }
+            lots.insertAll(restored, lotCount);
+            return sequence;
+        }
+    }
+
+    private static void readTrucks(IntBuffer data, IntQueue queue, int count, TruckStore trucks) {
+        for (int i = 0; i < count; i++) {
+            int id = data.get();
+            int capacity = data.get();
+            int load = data.get();
+            queue.enqueue(trucks.add(id, capacity, load));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+// Opt-in instrumentation, enabled with -Dtruck.stats=true.
+// ENABLED is a compile-time-like constant for the JIT, so every "if (Stats.ENABLED)" block
+// is removed from the compiled code when the mode is off.
+// -Dtruck.stats.interval=N also dumps the summary every N commands,
+// -Dtruck.stats.file=path appends the summaries to a file instead of standard error.
+public class Stats {
+    public static final boolean ENABLED = Boolean.getBoolean("truck.stats");
+    private static final long INTERVAL = Long.getLong("truck.stats.interval", 0);
+    private static final String FILE = System.getProperty("truck.stats.file");
+
+    // Nanoseconds spent per command, indexed by opcode
+    private static final LogHistogram[] latencies = new LogHistogram[Command.READY_N + 1];
+    // Nanoseconds spent adding a buffered run of created lots to the index
+    private static final LogHistogram createFlushes = new LogHistogram();
+
+    // AVL tree structure
+    public static long rotations;
+    private static final LogHistogram searchDepths = new LogHistogram();
+
+    // Trucks released and placed again per load command
+    private static final LogHistogram trucksMoved = new LogHistogram();
+
+    private static long commands;
+
+    static {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LogHistogram();
+        }
+    }
+
+    public static void recordCommand(int command, long nanos) {
+        latencies[command].record(nanos);
+        if (INTERVAL > 0 && ++commands % INTERVAL == 0) {
+            dump();
+        }
+    }
+
+    public static void recordCreateFlush(long nanos) {
+        createFlushes.record(nanos);
+    }
+
+    // Nodes visited by one AVL tree search
+    public static void recordSearchDepth(int depth) {
+        searchDepths.record(depth);
+    }
+
+    public static void recordTrucksMoved(int trucks) {
+        trucksMoved.record(trucks);
+    }
+
+    // Writes the summary as one JSON line
+    public static void dump() {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"latency_ns\":{");
+        for (int i = Command.CREATE_PARKING_LOT; i < latencies.length; i++) {
+            if (i > Command.CREATE_PARKING_LOT) {
+                json.append(',');
+            }
+            json.append('"').append(Command.name(i)).append("\":");
+            latencies[i].appendJson(json);
+        }
+        json.append(",\"create_flush\":");
+        createFlushes.appendJson(json);
+        json.append("},\"avl\":{\"rotations\":").append(rotations).append(",\"search_depth\":");
+        searchDepths.appendJson(json);
+        json.append("},\"load\":{\"trucks_moved\":");
+        trucksMoved.appendJson(json);
+        json.append("}}");
+
+        if (FILE == null) {
+            System.err.println(json);
+            return;
+        }
+        try (PrintStream out = new PrintStream(new FileOutputStream(FILE, true))) {
+            out.println(json);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
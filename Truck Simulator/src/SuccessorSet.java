@@ -0,0 +1,123 @@
+// Set of integers in [0, universe) stored as a hierarchy of 64-bit words.
+// Bit i of a level-0 word marks a member, a bit of a higher level marks a non-empty word of the level below,
+// so next and previous look at O(log_64 universe) words.
+public class SuccessorSet {
+    private final int universe;
+    private final long[][] levels;  // levels[0] holds the members, the last level is a single word
+
+    public SuccessorSet(int universe) {
+        this.universe = universe;
+        int levelCount = 0;
+        int n = Math.max(universe, 1);
+        do {
+            n = (n + 63) >>> 6;
+            levelCount++;
+        } while (n > 1);
+
+        levels = new long[levelCount][];
+        n = Math.max(universe, 1);
+        for (int level = 0; level < levelCount; level++) {
+            n = (n + 63) >>> 6;
+            levels[level] = new long[n];
+        }
+    }
+
+    public int getUniverse() {
+        return universe;
+    }
+
+    public boolean contains(int i) {
+        return (levels[0][i >>> 6] & 1L << i) != 0;
+    }
+
+    public void add(int i) {
+        for (long[] words : levels) {
+            int w = i >>> 6;
+            boolean wasEmpty = words[w] == 0;
+            words[w] |= 1L << i;
+            if (!wasEmpty) {
+                return;
+            }
+            i = w;
+        }
+    }
+
+    public void remove(int i) {
+        if (!contains(i)) {
+            return;
+        }
+        for (long[] words : levels) {
+            int w = i >>> 6;
+            words[w] &= ~(1L << i);
+            if (words[w] != 0) {
+                return;
+            }
+            i = w;
+        }
+    }
+
+    // Smallest member >= i, or -1
+    public int next(int i) {
+        if (i < 0) {
+            i = 0;
+        }
+        if (i >= universe) {
+            return -1;
+        }
+
+        // Climb until a word has a set bit at or after the position, then descend to its first member
+        int level = 0;
+        while (true) {
+            if (level == levels.length) {
+                return -1;
+            }
+            long[] words = levels[level];
+            int w = i >>> 6;
+            if (w < words.length) {
+                long bits = words[w] & (-1L << i);
+                if (bits != 0) {
+                    i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    break;
+                }
+            }
+            i = w + 1;
+            level++;
+        }
+        while (level > 0) {
+            level--;
+            i = (i << 6) + Long.numberOfTrailingZeros(levels[level][i]);
+        }
+        return i;
+    }
+
+    // Largest member <= i, or -1
+    public int previous(int i) {
+        if (i < 0) {
+            return -1;
+        }
+        if (i >= universe) {
+            i = universe - 1;
+        }
+
+        int level = 0;
+        while (true) {
+            if (level == levels.length || i < 0) {
+                return -1;
+            }
+            long[] words = levels[level];
+            int w = i >>> 6;
+            long bits = words[w] & (-1L >>> (63 - (i & 63)));
+            if (bits != 0) {
+                i = (w << 6) + 63 - Long.numberOfLeadingZeros(bits);
+                break;
+            }
+            i = w - 1;
+            level++;
+        }
+        while (level > 0) {
+            level--;
+            i = (i << 6) + 63 - Long.numberOfLeadingZeros(levels[level][i]);
+        }
+        return i;
+    }
+}
@@ -0,0 +1,116 @@
+// Struct-of-arrays storage for trucks.
+// A truck is referred to by a dense int handle indexing parallel arrays, handles of removed trucks are reused.
+public class TruckStore {
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    private int[] ids;
+    private int[] capacities;
+    private int[] loads;
+    private int size;  // Number of handles ever handed out
+
+    private int[] freeHandles;
+    private int freeCount;
+
+    public TruckStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TruckStore(int capacity) {
+        capacity = Math.max(capacity, 1);
+        this.ids = new int[capacity];
+        this.capacities = new int[capacity];
+        this.loads = new int[capacity];
+        this.freeHandles = new int[capacity];
+        this.size = 0;
+        this.freeCount = 0;
+    }
+
+    // Stores a new empty truck and returns its handle
+    public int add(int id, int capacity) {
+        return add(id, capacity, 0);
+    }
+
+    // Stores a truck carrying the given load and returns its handle
+    public int add(int id, int capacity, int load) {
+        int handle;
+        if (freeCount > 0) {
+            handle = freeHandles[--freeCount];
+        } else {
+            if (size == ids.length) {
+                grow();
+            }
+            handle = size++;
+        }
+        ids[handle] = id;
+        capacities[handle] = capacity;
+        loads[handle] = load;
+        return handle;
+    }
+
+    // Frees the handle of a truck that left the system
+    public void remove(int handle) {
+        if (freeCount == freeHandles.length) {
+            int[] grown = new int[freeHandles.length * 2];
+            System.arraycopy(freeHandles, 0, grown, 0, freeCount);
+            freeHandles = grown;
+        }
+        freeHandles[freeCount++] = handle;
+    }
+
+    public int getId(int handle) {
+        return ids[handle];
+    }
+
+    public int getCapacity(int handle) {
+        return capacities[handle];
+    }
+
+    public int getLoad(int handle) {
+        return loads[handle];
+    }
+
+    public int getRemainingCapacity(int handle) {
+        return capacities[handle] - loads[handle];
+    }
+
+    // Loads the truck with up to capacityConstraint units and returns the load that is left over
+    public int loadTruck(int handle, int load, int capacityConstraint) {
+        if (load >= capacityConstraint) {
+            loads[handle] += capacityConstraint;
+            return load - capacityConstraint;
+        }
+        loads[handle] += load;
+        return 0;
+    }
+
+    public boolean isFull(int handle) {
+        return loads[handle] == capacities[handle];
+    }
+
+    public void unloadTruck(int handle) {
+        loads[handle] = 0;
+    }
+
+    // Makes room for the given number of new handles without further growth
+    public void ensureCapacity(int count) {
+        if (size + count > ids.length) {
+            grow(size + count);
+        }
+    }
+
+    private void grow() {
+        grow(ids.length * 2);
+    }
+
+    private void grow(int capacity) {
+        int[] grown = new int[capacity];
+        System.arraycopy(ids, 0, grown, 0, size);
+        ids = grown;
+        grown = new int[capacity];
+        System.arraycopy(capacities, 0, grown, 0, size);
+        capacities = grown;
+        grown = new int[capacity];
+        System.arraycopy(loads, 0, grown, 0, size);
+        loads = grown;
+    }
+}
@@ -0,0 +1,286 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.SplittableRandom;
+
+// Writes a synthetic command file for the simulator. The same options and seed always give the same file.
+// Lot keys and truck capacities are drawn from [1, keys] and [1, max-capacity], uniformly or Zipf distributed.
+// Zipf ranks are scattered over the range by a fixed permutation, so the hot keys are not all at the bottom.
+// Usage: java WorkloadGenerator [--seed=N] [--commands=N] [--keys=N] [--key-dist=uniform|zipf]
+//                              [--capacity-dist=uniform|zipf] [--zipf-exponent=S] [--max-capacity=N]
+//                              [--max-limit=N] [--max-load=N] [--max-batch=N] [--mix=command=weight,...] <output_file>
+// --mix weighs the commands by their names, for example --mix=add_truck=50,ready=30,load=20
+public class WorkloadGenerator {
+    private static final String DEFAULT_MIX =
+            "create_parking_lot=4,delete_parking_lot=1,add_truck=40,ready=25,load=15,count=10,count_range=5";
+
+    public static void main(String[] args) {
+        long seed = 1;
+        long commands = 1_000_000;
+        int keys = 100_000;
+        boolean zipfKeys = false;
+        boolean zipfCapacities = false;
+        double exponent = 1.0;
+        int maxCapacity = -1;
+        int maxLimit = 8;
+        int maxLoad = -1;
+        int maxBatch = 8;
+        String mix = DEFAULT_MIX;
+        int argIndex = 0;
+        while (argIndex < args.length && args[argIndex].startsWith("--")) {
+            String arg = args[argIndex];
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(value);
+            } else if (arg.startsWith("--commands=")) {
+                commands = Long.parseLong(value);
+            } else if (arg.startsWith("--keys=")) {
+                keys = Integer.parseInt(value);
+            } else if (arg.startsWith("--key-dist=")) {
+                zipfKeys = value.equals("zipf");
+            } else if (arg.startsWith("--capacity-dist=")) {
+                zipfCapacities = value.equals("zipf");
+            } else if (arg.startsWith("--zipf-exponent=")) {
+                exponent = Double.parseDouble(value);
+            } else if (arg.startsWith("--max-capacity=")) {
+                maxCapacity = Integer.parseInt(value);
+            } else if (arg.startsWith("--max-limit=")) {
+                maxLimit = Integer.parseInt(value);
+            } else if (arg.startsWith("--max-load=")) {
+                maxLoad = Integer.parseInt(value);
+            } else if (arg.startsWith("--max-batch=")) {
+                maxBatch = Integer.parseInt(value);
+            } else if (arg.startsWith("--mix=")) {
+                mix = value;
+            } else {
+                System.err.println("Unknown option " + arg);
+                return;
+            }
+            argIndex++;
+        }
+        if (argIndex >= args.length) {
+            System.err.println("Missing output file");
+            return;
+        }
+        if (maxCapacity < 0) {
+            maxCapacity = keys;
+        }
+        if (maxLoad < 0) {
+            maxLoad = 4 * keys;
+        }
+
+        int[] weights;
+        try {
+            weights = parseMix(mix);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        KeySampler lotKeys = new KeySampler(keys, zipfKeys ? exponent : 0);
+        KeySampler capacities = new KeySampler(maxCapacity, zipfCapacities ? exponent : 0);
+        long start = System.nanoTime();
+        try (LineWriter out = new LineWriter(new FileOutputStream(args[argIndex]))) {
+            generate(out, new SplittableRandom(seed), commands, weights, lotKeys, capacities,
+                    maxLimit, maxLoad, maxBatch);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        System.err.printf("%d commands in %.1f s%n", commands, (System.nanoTime() - start) / 1e9);
+    }
+
+    // Cumulative weights indexed by opcode
+    private static int[] parseMix(String mix) {
+        int[] weights = new int[Command.READY_N + 1];
+        for (String entry : mix.split(",")) {
+            int separator = entry.indexOf('=');
+            String name = (separator < 0) ? entry : entry.substring(0, separator);
+            int command = Command.UNKNOWN;
+            for (int i = Command.CREATE_PARKING_LOT; i <= Command.READY_N; i++) {
+                if (Command.name(i).equals(name)) {
+                    command = i;
+                }
+            }
+            if (command == Command.UNKNOWN || separator < 0) {
+                throw new IllegalArgumentException("Bad mix entry " + entry);
+            }
+            weights[command] = Integer.parseInt(entry.substring(separator + 1));
+        }
+        for (int i = 1; i < weights.length; i++) {
+            weights[i] += weights[i - 1];
+        }
+        if (weights[weights.length - 1] <= 0) {
+            throw new IllegalArgumentException("The mix has no weight");
+        }
+        return weights;
+    }
+
+    private static void generate(LineWriter out, SplittableRandom random, long commands, int[] weights,
+                                 KeySampler lotKeys, KeySampler capacities, int maxLimit, int maxLoad, int maxBatch)
+            throws IOException {
+        int total = weights[weights.length - 1];
+        int truckId = 0;
+        for (long i = 0; i < commands; i++) {
+            int pick = random.nextInt(total);
+            int command = 1;
+            while (weights[command] <= pick) {
+                command++;
+            }
+            out.word(Command.name(command));
+            switch (command) {
+                case Command.CREATE_PARKING_LOT:
+                    out.number(lotKeys.sample(random));
+                    out.number(1 + random.nextInt(maxLimit));
+                    break;
+                case Command.ADD_TRUCK:
+                    out.number(++truckId);
+                    out.number(capacities.sample(random));
+                    break;
+                case Command.LOAD:
+                    out.number(lotKeys.sample(random));
+                    out.number(1 + random.nextInt(maxLoad));
+                    break;
+                case Command.READY_N:
+                    out.number(lotKeys.sample(random));
+                    out.number(1 + random.nextInt(maxBatch));
+                    break;
+                case Command.COUNT_RANGE:
+                    int lo = lotKeys.sample(random);
+                    out.number(lo);
+                    out.number(lo + random.nextInt(lotKeys.range / 10 + 1));
+                    break;
+                case Command.SNAPSHOT:
+                    break;
+                default:
+                    out.number(lotKeys.sample(random));
+                    break;
+            }
+            out.endLine();
+        }
+    }
+
+    // Draws keys from [1, range], uniformly for exponent 0 and Zipf distributed otherwise.
+    // Zipf ranks come from the rejection-inversion method of Hoermann and Derflinger, which needs no table
+    // and takes constant expected time for any range.
+    private static class KeySampler {
+        final int range;
+        private final double exponent;
+        private final long scatter;  // Multiplier coprime to the range, maps ranks to keys
+        private final double hIntegralX1;
+        private final double hIntegralN;
+        private final double threshold;
+
+        KeySampler(int range, double exponent) {
+            this.range = Math.max(range, 1);
+            this.exponent = exponent;
+            long multiplier = 2_654_435_761L % this.range;
+            while (gcd(multiplier, this.range) != 1) {
+                multiplier++;
+            }
+            this.scatter = multiplier;
+            this.hIntegralX1 = hIntegral(1.5) - 1;
+            this.hIntegralN = hIntegral(this.range + 0.5);
+            this.threshold = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+        }
+
+        int sample(SplittableRandom random) {
+            if (exponent <= 0) {
+                return 1 + random.nextInt(range);
+            }
+            int rank = zipfRank(random);
+            return (int) ((rank - 1) * scatter % range) + 1;
+        }
+
+        private int zipfRank(SplittableRandom random) {
+            while (true) {
+                double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+                double x = hIntegralInverse(u);
+                int k = (int) Math.max(1, Math.min(range, x + 0.5));
+                if (k - x <= threshold || u >= hIntegral(k + 0.5) - h(k)) {
+                    return k;
+                }
+            }
+        }
+
+        private double h(double x) {
+            return Math.exp(-exponent * Math.log(x));
+        }
+
+        private double hIntegral(double x) {
+            double logX = Math.log(x);
+            return expm1OverX((1 - exponent) * logX) * logX;
+        }
+
+        private double hIntegralInverse(double x) {
+            double t = Math.max(x * (1 - exponent), -1);
+            return Math.exp(log1pOverX(t) * x);
+        }
+
+        private static double log1pOverX(double x) {
+            return (Math.abs(x) > 1e-8) ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+        }
+
+        private static double expm1OverX(double x) {
+            return (Math.abs(x) > 1e-8) ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+        }
+
+        private static long gcd(long a, long b) {
+            return (b == 0) ? a : gcd(b, a % b);
+        }
+    }
+
+    // Buffered writer for command lines, integers are formatted straight into the buffer
+    private static class LineWriter implements AutoCloseable {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position;
+        private final byte[] digits = new byte[11];
+
+        LineWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        void word(String word) throws IOException {
+            ensure(word.length());
+            for (int i = 0; i < word.length(); i++) {
+                buffer[position++] = (byte) word.charAt(i);
+            }
+        }
+
+        // Writes a space and the value
+        void number(int value) throws IOException {
+            ensure(12);
+            buffer[position++] = ' ';
+            if (value < 0) {
+                buffer[position++] = '-';
+                value = -value;
+            }
+            int count = 0;
+            do {
+                digits[count++] = (byte) ('0' + value % 10);
+                value /= 10;
+            } while (value != 0);
+            while (count > 0) {
+                buffer[position++] = digits[--count];
+            }
+        }
+
+        void endLine() throws IOException {
+            ensure(1);
+            buffer[position++] = '\n';
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (position + bytes > buffer.length) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.write(buffer, 0, position);
+            out.close();
+        }
+    }
+}